@@ -19,5 +19,6 @@ public class MatchScoreEntity {
     private int minute;
     private String period;
     private String status;
+    private long version;
     private LocalDateTime updateTime;
 }
\ No newline at end of file
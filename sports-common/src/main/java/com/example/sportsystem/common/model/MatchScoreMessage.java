@@ -8,6 +8,8 @@ import com.example.sportsystem.common.entity.MatchScoreEntity;
 
 // 添加缺失的导入语句
 import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * 比分更新消息实体类
@@ -16,12 +18,24 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class MatchScoreMessage {
+    // 推导版本时使用的比赛阶段顺序（status 或 period 取值，未知取值按 0 处理）
+    private static final Map<String, Integer> STAGE_ORDINALS = Map.ofEntries(
+            Map.entry("NOT_STARTED", 0), Map.entry("SCHEDULED", 0), Map.entry("NS", 0),
+            Map.entry("FIRST_HALF", 1), Map.entry("1H", 1),
+            Map.entry("HALF_TIME", 2), Map.entry("HT", 2),
+            Map.entry("SECOND_HALF", 3), Map.entry("2H", 3),
+            Map.entry("EXTRA_TIME", 4), Map.entry("ET", 4),
+            Map.entry("PENALTIES", 5), Map.entry("PEN", 5),
+            Map.entry("FINISHED", 6), Map.entry("ENDED", 6), Map.entry("FT", 6), Map.entry("CANCELLED", 6));
+
     private String matchId;
     private int homeScore;
     private int awayScore;
     private int minute;
     private String period;
     private String status;
+    // 数据源分配的单调递增版本号（0 表示未提供，按比赛阶段与进程推导版本）
+    private long seq;
 
     // 转换为数据库实体类（示例）
     public MatchScoreEntity toEntity() {
@@ -32,7 +46,31 @@ public class MatchScoreMessage {
         entity.setMinute(minute);
         entity.setPeriod(period);
         entity.setStatus(status);
+        entity.setVersion(version());
         entity.setUpdateTime(LocalDateTime.now());
         return entity;
     }
-}
\ No newline at end of file
+
+    /**
+     * 比分版本：优先使用数据源的版本号，未提供时按比赛进程推导
+     * @return 版本号
+     */
+    public long version() {
+        return seq > 0 ? seq : progressVersion();
+    }
+
+    /**
+     * 未提供版本号时按比赛进程推导版本：比赛阶段优先，其次为比赛分钟、总进球数。
+     * 同一分钟内的状态变化（如终场）据此排序；VAR 取消进球等使进程倒退的更正无法推导，
+     * 需要数据源提供 seq 才能生效
+     * @return 推导的版本号
+     */
+    private long progressVersion() {
+        long stage = Math.max(stageOrdinal(status), stageOrdinal(period));
+        return (stage << 40) | ((long) (minute & 0xFFFFF) << 20) | ((homeScore + awayScore) & 0xFFFFF);
+    }
+
+    private static int stageOrdinal(String value) {
+        return value != null ? STAGE_ORDINALS.getOrDefault(value.toUpperCase(Locale.ROOT), 0) : 0;
+    }
+}
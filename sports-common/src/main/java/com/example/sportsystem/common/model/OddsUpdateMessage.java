@@ -34,7 +34,9 @@ public class OddsUpdateMessage {
         entity.setHandicap(handicap);
         entity.setHomeOdds(homeOdds);
         entity.setAwayOdds(awayOdds);
-        entity.setTimestamp(LocalDateTime.ofEpochSecond(timestamp / 1000, 0, ZoneOffset.UTC));
+        // 保留毫秒精度，同一秒内的多次变盘在历史表中不会互相覆盖
+        entity.setTimestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(timestamp, 1000),
+                (int) Math.floorMod(timestamp, 1000) * 1_000_000, ZoneOffset.UTC));
         return entity;
     }
 }
\ No newline at end of file
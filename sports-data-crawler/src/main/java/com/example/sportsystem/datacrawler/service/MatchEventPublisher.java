@@ -0,0 +1,75 @@
+package com.example.sportsystem.datacrawler.service;
+
+import com.example.sportsystem.common.model.MatchScoreMessage;
+import com.example.sportsystem.common.model.OddsUpdateMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.spring.core.RocketMQTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * 赛事事件发布服务
+ * 以赛事ID为哈希键选择消息队列（RocketMQTemplate 默认按哈希选择队列），
+ * 同一赛事的比分与盘口总是发往同一队列，配合消费端的顺序消费保证单场赛事的更新不乱序，
+ * 不同赛事分散到各个队列上并行消费。
+ * 采集服务目前只采集未来赛事（FutureMatchesJob），尚无比分与盘口数据源；接入实时数据源后比分与盘口须经本服务发送
+ */
+@Service
+@Slf4j
+public class MatchEventPublisher {
+
+    public static final String MATCH_SCORE_TOPIC = "MATCH_SCORE_TOPIC";
+    public static final String ODDS_UPDATE_TOPIC = "ODDS_UPDATE_TOPIC";
+
+    private final RocketMQTemplate rocketMQTemplate;
+
+    // 同步发送超时时间
+    @Value("${crawler.publish.send-timeout-ms:3000}")
+    private long sendTimeoutMs;
+
+    public MatchEventPublisher(RocketMQTemplate rocketMQTemplate) {
+        this.rocketMQTemplate = rocketMQTemplate;
+    }
+
+    /**
+     * 发布比分更新
+     * @param message 比分消息
+     * @return 是否发送成功
+     */
+    public boolean publishScore(MatchScoreMessage message) {
+        return send(MATCH_SCORE_TOPIC, message, message.getMatchId());
+    }
+
+    /**
+     * 发布盘口更新
+     * @param message 盘口消息
+     * @return 是否发送成功
+     */
+    public boolean publishOdds(OddsUpdateMessage message) {
+        return send(ODDS_UPDATE_TOPIC, message, message.getMatchId());
+    }
+
+    /**
+     * 按赛事ID选择队列同步发送；同步发送保证同一赛事的上一条消息写入成功后才发送下一条
+     */
+    private boolean send(String topic, Object message, String matchId) {
+        if (matchId == null || matchId.isEmpty()) {
+            log.warn("[RocketMQ] 缺少赛事ID的消息无法按赛事选择队列，已丢弃: {}", message);
+            return false;
+        }
+        try {
+            SendResult result = rocketMQTemplate.syncSendOrderly(topic, message, matchId, sendTimeoutMs);
+            if (result.getSendStatus() != SendStatus.SEND_OK) {
+                log.warn("[RocketMQ] 消息发送状态异常: {} {} {}", topic, matchId, result.getSendStatus());
+                return false;
+            }
+            log.debug("[RocketMQ] 消息已发送: {} {} -> {}", topic, matchId, result.getMessageQueue());
+            return true;
+        } catch (Exception e) {
+            log.error("[RocketMQ] 消息发送失败: {} {}", topic, matchId, e);
+            return false;
+        }
+    }
+}
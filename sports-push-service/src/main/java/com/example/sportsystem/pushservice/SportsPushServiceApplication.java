@@ -2,10 +2,12 @@ package com.example.sportsystem.pushservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class SportsPushServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(SportsPushServiceApplication.class, args);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package com.example.sportsystem.pushservice.codec;
+
+import com.example.sportsystem.common.model.MatchScoreMessage;
+import com.example.sportsystem.common.model.OddsUpdateMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 二进制推送帧编码（固定布局，大端序）
+ * <p>
+ * 字符串：2 字节无符号长度 + UTF-8 字节，null 以长度 0xFFFF 表示
+ * <pre>
+ * 比分帧：0x01 | matchId | homeScore(int32) | awayScore(int32) | minute(int16) | period | status
+ * 盘口帧：0x02 | matchId | bookmaker | oddsType | handicap | homeOdds(float64) | awayOdds(float64) | timestamp(int64)
+ * </pre>
+ */
+public final class BinaryFrameCodec {
+
+    public static final String SUBPROTOCOL = "sports.binary.v1";
+
+    public static final byte TYPE_SCORE = 0x01;
+    public static final byte TYPE_ODDS = 0x02;
+
+    private static final int NULL_LENGTH = 0xFFFF;
+
+    private BinaryFrameCodec() {
+    }
+
+    /**
+     * 编码比分帧
+     * @param message 比分消息
+     * @return 二进制帧
+     */
+    public static byte[] encode(MatchScoreMessage message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_SCORE);
+            writeString(out, message.getMatchId());
+            out.writeInt(message.getHomeScore());
+            out.writeInt(message.getAwayScore());
+            out.writeShort(message.getMinute());
+            writeString(out, message.getPeriod());
+            writeString(out, message.getStatus());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 编码盘口帧
+     * @param message 盘口消息
+     * @return 二进制帧
+     */
+    public static byte[] encode(OddsUpdateMessage message) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TYPE_ODDS);
+            writeString(out, message.getMatchId());
+            writeString(out, message.getBookmaker());
+            writeString(out, message.getOddsType());
+            writeString(out, message.getHandicap());
+            out.writeDouble(message.getHomeOdds());
+            out.writeDouble(message.getAwayOdds());
+            out.writeLong(message.getTimestamp());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_LENGTH);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length >= NULL_LENGTH) {
+            throw new IllegalArgumentException("字符串过长: " + utf8.length);
+        }
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.sportsystem.pushservice.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 增量推送协议编解码
+ * <p>
+ * 全量帧：{"type":"snapshot","kind":"score","key":"1001","seq":5,"data":{...全部字段...}}
+ * 增量帧：{"type":"delta","kind":"score","key":"1001","seq":6,"base":5,"data":{...变化字段...}}
+ * 客户端仅在 base 等于本地该 key 的 seq 时应用增量帧，否则发送 {"type":"resync","data":"赛事ID"} 请求全量帧
+ */
+public final class DeltaCodec {
+
+    public static final String KIND_SCORE = "score";
+    public static final String KIND_ODDS = "odds";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private DeltaCodec() {
+    }
+
+    /**
+     * 解析消息字段
+     * @param payload 消息内容（JSON 对象）
+     * @return 字段对象，非 JSON 对象时返回 null
+     */
+    public static ObjectNode parse(String payload) {
+        try {
+            JsonNode node = MAPPER.readTree(payload);
+            return node instanceof ObjectNode objectNode ? objectNode : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 计算相对上一版本发生变化的顶层字段（含新增与置空的字段）
+     * @param previous 上一版本字段
+     * @param current 当前字段
+     * @return 变化字段
+     */
+    public static ObjectNode diff(ObjectNode previous, ObjectNode current) {
+        ObjectNode changed = MAPPER.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = current.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getValue().equals(previous.get(field.getKey()))) {
+                changed.set(field.getKey(), field.getValue());
+            }
+        }
+        Iterator<String> previousNames = previous.fieldNames();
+        while (previousNames.hasNext()) {
+            String name = previousNames.next();
+            if (!current.has(name)) {
+                changed.putNull(name);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 编码全量帧
+     * @param kind 帧类别（score/odds）
+     * @param key 版本键（比分为赛事ID，盘口为盘口键）
+     * @param seq 序列号
+     * @param data 全部字段
+     * @return JSON 文本
+     */
+    public static String encodeSnapshot(String kind, String key, long seq, ObjectNode data) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("type", "snapshot");
+        root.put("kind", kind);
+        root.put("key", key);
+        root.put("seq", seq);
+        root.set("data", data);
+        return root.toString();
+    }
+
+    /**
+     * 编码增量帧
+     * @param kind 帧类别（score/odds）
+     * @param key 版本键
+     * @param seq 序列号
+     * @param base 增量所基于的序列号
+     * @param changed 变化字段
+     * @return JSON 文本
+     */
+    public static String encodeDelta(String kind, String key, long seq, long base, ObjectNode changed) {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("type", "delta");
+        root.put("kind", kind);
+        root.put("key", key);
+        root.put("seq", seq);
+        root.put("base", base);
+        root.set("data", changed);
+        return root.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.sportsystem.pushservice.config;
+
+import com.example.sportsystem.pushservice.service.ClusterBroadcastChannel;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 集群广播通道配置
+ * 订阅 Redis Pub/Sub 广播通道，每个推送节点都会收到
+ */
+@Configuration
+public class ClusterChannelConfig {
+
+    /**
+     * 创建广播通道的订阅容器
+     * @param connectionFactory Redis 连接工厂
+     * @param broadcastChannel 广播通道
+     * @return RedisMessageListenerContainer 实例
+     */
+    @Bean
+    public RedisMessageListenerContainer clusterChannelContainer(RedisConnectionFactory connectionFactory,
+                                                                 ClusterBroadcastChannel broadcastChannel) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(broadcastChannel, ChannelTopic.of(broadcastChannel.getChannel()));
+        return container;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.sportsystem.pushservice.config;
+
+/**
+ * 推送服务集群消费模式
+ * 默认 SHARED 只适用于单节点部署；部署多个推送节点时必须配置 websocket.cluster.mode=BROADCAST，
+ * 否则每条更新只会被其中一个节点消费，订阅在其他节点上的客户端收不到该更新
+ */
+public enum ClusterMode {
+    /**
+     * 所有节点共用一个消费者组，每条消息只投递给其中一个节点（仅限单节点部署）
+     */
+    SHARED,
+    /**
+     * 每个节点使用独立的消费者组，每个节点都能收到全部更新，
+     * 只向本节点上订阅了该赛事的会话推送
+     */
+    BROADCAST
+}
@@ -0,0 +1,218 @@
+package com.example.sportsystem.pushservice.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.Decoder;
+import jakarta.websocket.Encoder;
+import jakarta.websocket.Extension;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpointConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.standard.TomcatRequestUpgradeStrategy;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 握手处理器：控制 permessage-deflate 扩展的协商
+ * <p>
+ * 容器（Tomcat）在协商成功后压缩该会话的所有数据帧；本类决定是否接受客户端的压缩请求，
+ * 以及服务端是否跨消息保留压缩上下文（context takeover）。保留上下文时，重复的 JSON 键名
+ * 在后续帧中只需引用滑动窗口中的历史数据，压缩率明显更高，代价是每个会话常驻一个压缩窗口。
+ * <p>
+ * Tomcat 升级时按请求头中的 Sec-WebSocket-Extensions 重新协商（端点未配置扩展时回退到容器内置扩展），
+ * 只过滤 Spring 一侧的扩展列表不会生效；因此两个开关都在传给 Tomcat 的 Configurator 中执行：
+ * 关闭压缩时从客户端请求中去掉 permessage-deflate，不保留上下文时在客户端请求中加入 server_no_context_takeover
+ * （PerMessageDeflate 协商时会接受该参数）
+ */
+@Component
+public class CompressionHandshakeHandler extends DefaultHandshakeHandler {
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+    // 是否启用 WebSocket 消息压缩
+    private final boolean compressionEnabled;
+
+    public CompressionHandshakeHandler(@Value("${websocket.compression.enabled:true}") boolean compressionEnabled,
+                                       @Value("${websocket.compression.context-takeover:true}") boolean contextTakeover) {
+        super(new CompressionUpgradeStrategy(compressionEnabled, contextTakeover));
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * 过滤客户端请求的扩展（关闭压缩时 Spring 一侧也不再声明 permessage-deflate）
+     * @param request 握手请求
+     * @param requestedExtensions 客户端请求的扩展
+     * @param supportedExtensions 容器支持的扩展
+     * @return 协商使用的扩展
+     */
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+                                                                 List<WebSocketExtension> requestedExtensions,
+                                                                 List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> result = new ArrayList<>();
+        for (WebSocketExtension extension : super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions)) {
+            if (compressionEnabled || !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName())) {
+                result.add(extension);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 升级时替换端点配置的 Configurator，在 Tomcat 协商扩展前调整客户端请求的 permessage-deflate
+     */
+    private static final class CompressionUpgradeStrategy extends TomcatRequestUpgradeStrategy {
+
+        private final boolean compressionEnabled;
+        private final boolean contextTakeover;
+
+        private CompressionUpgradeStrategy(boolean compressionEnabled, boolean contextTakeover) {
+            this.compressionEnabled = compressionEnabled;
+            this.contextTakeover = contextTakeover;
+        }
+
+        @Override
+        protected void upgradeHttpToWebSocket(HttpServletRequest request, HttpServletResponse response,
+                                              ServerEndpointConfig endpointConfig, Map<String, String> pathParams) throws Exception {
+            super.upgradeHttpToWebSocket(request, response, new NegotiatingEndpointConfig(endpointConfig), pathParams);
+        }
+
+        /**
+         * 调整客户端请求的扩展
+         * @param requested 客户端请求的扩展
+         * @return 交给容器协商的扩展
+         */
+        private List<Extension> adjust(List<Extension> requested) {
+            List<Extension> result = new ArrayList<>(requested.size());
+            for (Extension extension : requested) {
+                if (!PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName())) {
+                    result.add(extension);
+                } else if (compressionEnabled) {
+                    result.add(contextTakeover ? extension : withoutContextTakeover(extension));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 在客户端的 permessage-deflate 请求中加入 server_no_context_takeover，要求服务端每条消息重置压缩上下文
+         */
+        private static Extension withoutContextTakeover(Extension extension) {
+            boolean present = extension.getParameters().stream()
+                    .anyMatch(parameter -> SERVER_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(parameter.getName()));
+            if (present) {
+                return extension;
+            }
+            List<Extension.Parameter> parameters = new ArrayList<>(extension.getParameters());
+            parameters.add(new Extension.Parameter() {
+                @Override
+                public String getName() {
+                    return SERVER_NO_CONTEXT_TAKEOVER;
+                }
+
+                @Override
+                public String getValue() {
+                    return null;
+                }
+            });
+            return new Extension() {
+                @Override
+                public String getName() {
+                    return extension.getName();
+                }
+
+                @Override
+                public List<Parameter> getParameters() {
+                    return parameters;
+                }
+            };
+        }
+
+        /**
+         * 委托原端点配置，只替换扩展协商
+         */
+        private final class NegotiatingEndpointConfig extends ServerEndpointConfig.Configurator implements ServerEndpointConfig {
+
+            private final ServerEndpointConfig delegate;
+            private final ServerEndpointConfig.Configurator configurator;
+
+            private NegotiatingEndpointConfig(ServerEndpointConfig delegate) {
+                this.delegate = delegate;
+                this.configurator = delegate.getConfigurator();
+            }
+
+            @Override
+            public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+                return configurator.getNegotiatedExtensions(installed, adjust(requested));
+            }
+
+            @Override
+            public String getNegotiatedSubprotocol(List<String> supported, List<String> requested) {
+                return configurator.getNegotiatedSubprotocol(supported, requested);
+            }
+
+            @Override
+            public boolean checkOrigin(String originHeaderValue) {
+                return configurator.checkOrigin(originHeaderValue);
+            }
+
+            @Override
+            public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+                configurator.modifyHandshake(delegate, request, response);
+            }
+
+            @Override
+            public <T> T getEndpointInstance(Class<T> endpointClass) throws InstantiationException {
+                return configurator.getEndpointInstance(endpointClass);
+            }
+
+            @Override
+            public Class<?> getEndpointClass() {
+                return delegate.getEndpointClass();
+            }
+
+            @Override
+            public String getPath() {
+                return delegate.getPath();
+            }
+
+            @Override
+            public List<String> getSubprotocols() {
+                return delegate.getSubprotocols();
+            }
+
+            @Override
+            public List<Extension> getExtensions() {
+                return delegate.getExtensions();
+            }
+
+            @Override
+            public ServerEndpointConfig.Configurator getConfigurator() {
+                return this;
+            }
+
+            @Override
+            public List<Class<? extends Encoder>> getEncoders() {
+                return delegate.getEncoders();
+            }
+
+            @Override
+            public List<Class<? extends Decoder>> getDecoders() {
+                return delegate.getDecoders();
+            }
+
+            @Override
+            public Map<String, Object> getUserProperties() {
+                return delegate.getUserProperties();
+            }
+        }
+    }
+}
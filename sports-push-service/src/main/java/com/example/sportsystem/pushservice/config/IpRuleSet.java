@@ -0,0 +1,146 @@
+package com.example.sportsystem.pushservice.config;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * 预编译的 IP 规则集合（IPv4 / IPv6 二进制前缀树）
+ * 启动时将精确地址、CIDR 与末尾通配符（如 192.168.1.*）统一转换为前缀插入前缀树，
+ * 匹配时只需按地址位逐位下探，耗时与规则数量无关，且不做正则匹配与地址解析
+ */
+public final class IpRuleSet {
+
+    private static final Logger log = Logger.getLogger(IpRuleSet.class.getName());
+
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+    private final boolean empty;
+
+    /**
+     * 前缀树节点
+     */
+    private static final class Node {
+        private final Node[] children = new Node[2];
+        private boolean terminal;
+    }
+
+    /**
+     * 编译规则
+     * @param patterns 规则列表（支持精确地址、CIDR 与末尾通配符）
+     */
+    public IpRuleSet(List<String> patterns) {
+        int compiled = 0;
+        for (String pattern : patterns) {
+            if (add(pattern.trim())) {
+                compiled++;
+            } else {
+                log.warning("[WebSocket] 无法解析的 IP 规则，已忽略: " + pattern);
+            }
+        }
+        this.empty = compiled == 0;
+    }
+
+    /**
+     * 规则集合是否为空
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * 判断地址是否命中任一规则
+     * @param address 客户端地址
+     * @return 是否命中
+     */
+    public boolean matches(InetAddress address) {
+        if (address == null) {
+            return false;
+        }
+        byte[] bytes = address.getAddress();
+        Node node = bytes.length == 4 ? ipv4Root : ipv6Root;
+        int bits = bytes.length * 8;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == bits) {
+                return false;
+            }
+            node = node.children[bit(bytes, i)];
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    private boolean add(String pattern) {
+        try {
+            if (pattern.contains("/")) {
+                // CIDR 格式
+                String[] parts = pattern.split("/");
+                byte[] network = parseLiteral(parts[0]);
+                int prefixLength = Integer.parseInt(parts[1]);
+                if (prefixLength < 0 || prefixLength > network.length * 8) {
+                    return false;
+                }
+                insert(network, prefixLength);
+                return true;
+            }
+            if (pattern.contains("*")) {
+                // 通配符格式（仅支持 IPv4 末尾的若干段，如 10.1.*.*）
+                String[] octets = pattern.split("\\.");
+                if (octets.length != 4) {
+                    return false;
+                }
+                byte[] network = new byte[4];
+                int fixed = 0;
+                while (fixed < 4 && !"*".equals(octets[fixed])) {
+                    network[fixed] = (byte) Integer.parseInt(octets[fixed]);
+                    fixed++;
+                }
+                for (int i = fixed; i < 4; i++) {
+                    if (!"*".equals(octets[i])) {
+                        return false;
+                    }
+                }
+                insert(network, fixed * 8);
+                return true;
+            }
+            // 精确匹配
+            byte[] address = parseLiteral(pattern);
+            insert(address, address.length * 8);
+            return true;
+        } catch (NumberFormatException | UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 解析 IP 字面量（拒绝主机名，避免启动时触发 DNS 查询）
+     */
+    private static byte[] parseLiteral(String literal) throws UnknownHostException {
+        if (!literal.contains(":") && !literal.matches("[0-9.]+")) {
+            throw new UnknownHostException(literal);
+        }
+        return InetAddress.getByName(literal).getAddress();
+    }
+
+    private void insert(byte[] address, int prefixLength) {
+        Node node = address.length == 4 ? ipv4Root : ipv6Root;
+        for (int i = 0; i < prefixLength && !node.terminal; i++) {
+            int bit = bit(address, i);
+            if (node.children[bit] == null) {
+                node.children[bit] = new Node();
+            }
+            node = node.children[bit];
+        }
+        node.terminal = true;
+    }
+
+    private static int bit(byte[] address, int index) {
+        return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+}
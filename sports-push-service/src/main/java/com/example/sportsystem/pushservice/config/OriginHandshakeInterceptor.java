@@ -1,6 +1,10 @@
 package com.example.sportsystem.pushservice.config;
 
+import com.example.sportsystem.pushservice.service.HandshakeAdmissionService;
+import com.example.sportsystem.pushservice.service.SessionDrainService;
 import com.example.sportsystem.pushservice.service.TokenBlacklistService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
@@ -10,12 +14,13 @@ import org.springframework.web.socket.server.HandshakeInterceptor;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
-import java.security.InvalidKeyException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -27,17 +32,33 @@ import java.util.regex.Pattern;
 public class OriginHandshakeInterceptor implements HandshakeInterceptor {
     
     private static final String SECRET = "your-secret-key-here"; // 替换为实际密钥
-    private static final String KEY_USER = "user";
-    // IP白名单（支持通配符*和CIDR格式）
-    private List<String> ipWhitelist = List.of("192.168.1.*", "10.0.0.1/24");
-    // IP黑名单（支持通配符*和CIDR格式）
-    private List<String> ipBlacklist = List.of("192.168.1.100", "10.0.0.5");
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final SecretKeySpec SECRET_KEY = new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+    public static final String KEY_USER = "user";
+    public static final String KEY_AUTHENTICATED = "authenticated";
+    // 准入时预留的连接名额ID，连接建立后释放
+    public static final String KEY_RESERVATION = "admission_reservation";
+    // 每个线程复用一个已初始化的 Mac，doFinal 后自动重置，无需每次握手重新创建
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(OriginHandshakeInterceptor::createMac);
+    // IP白名单（支持通配符*和CIDR格式），启动时编译为前缀树
+    private final IpRuleSet ipWhitelist = new IpRuleSet(List.of("192.168.1.*", "10.0.0.1/24"));
+    // IP黑名单（支持通配符*和CIDR格式），启动时编译为前缀树
+    private final IpRuleSet ipBlacklist = new IpRuleSet(List.of("192.168.1.100", "10.0.0.5"));
     private final TokenBlacklistService tokenBlacklistService;
+    private final HandshakeAdmissionService admissionService;
+    private final SessionDrainService drainService;
+    // 是否允许无有效 Token 的匿名连接（匿名连接不能使用为认证用户预留的容量）
+    @Value("${websocket.admission.allow-anonymous:false}")
+    private boolean allowAnonymous;
     // 日志记录器
     private static final Logger log = Logger.getLogger(OriginHandshakeInterceptor.class.getName());
 
-    public OriginHandshakeInterceptor(TokenBlacklistService tokenBlacklistService) {
+    public OriginHandshakeInterceptor(TokenBlacklistService tokenBlacklistService,
+                                      HandshakeAdmissionService admissionService,
+                                      SessionDrainService drainService) {
         this.tokenBlacklistService = tokenBlacklistService;
+        this.admissionService = admissionService;
+        this.drainService = drainService;
     }
 
     /**
@@ -47,6 +68,12 @@ public class OriginHandshakeInterceptor implements HandshakeInterceptor {
      */
     @Override
     public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) throws Exception {
+        // 节点排空中不再接受新连接，客户端经负载均衡重连到其他节点
+        if (drainService.isDraining()) {
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return false;
+        }
+
         // 获取 Token 参数
         String token = request.getURI().getQuery();
         if (token != null && token.contains("token=")) {
@@ -54,8 +81,8 @@ public class OriginHandshakeInterceptor implements HandshakeInterceptor {
         }
 
         // 获取客户端 IP 地址
-        String remoteAddress = request.getRemoteAddress() != null ? 
-                request.getRemoteAddress().getAddress().getHostAddress() : "unknown";
+        InetAddress remoteAddress = request.getRemoteAddress() != null ?
+                request.getRemoteAddress().getAddress() : null;
 
         // 检查 IP 黑白名单
         if (!isIpAllowed(remoteAddress)) {
@@ -64,19 +91,32 @@ public class OriginHandshakeInterceptor implements HandshakeInterceptor {
             return false;
         }
 
-        if (tokenBlacklistService.isTokenBlacklisted(token)) {
-            log.warning("[WebSocket] Token 已在黑名单中: " + token);
+        // Token 签名校验只做本地计算，先于准入控制执行以区分认证用户与匿名用户
+        boolean authenticated = token != null && validateToken(token);
+        if (!authenticated && !allowAnonymous) {
             response.setStatusCode(HttpStatus.FORBIDDEN);
             return false;
         }
 
-        if (validateToken(token)) {
-            attributes.put(KEY_USER, "anonymous_user");
-            return true;
-        } else {
+        // 准入控制：超出握手速率或连接上限时拒绝，并通过 Retry-After 让客户端错峰重连
+        HandshakeAdmissionService.Admission admission = admissionService.admit(remoteAddress.getHostAddress(), authenticated);
+        if (!admission.admitted()) {
+            response.setStatusCode(admission.status());
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(admission.retryAfterSeconds()));
+            return false;
+        }
+
+        if (authenticated && tokenBlacklistService.isTokenBlacklisted(token)) {
+            log.warning("[WebSocket] Token 已在黑名单中: " + token);
+            admissionService.release(admission.reservationId());
             response.setStatusCode(HttpStatus.FORBIDDEN);
             return false;
         }
+
+        attributes.put(KEY_RESERVATION, admission.reservationId());
+        attributes.put(KEY_USER, "anonymous_user");
+        attributes.put(KEY_AUTHENTICATED, authenticated);
+        return true;
     }
 
     /**
@@ -105,9 +145,10 @@ public class OriginHandshakeInterceptor implements HandshakeInterceptor {
                 return false;
             }
 
-            // 生成签名并比较
+            // 生成签名并以固定时间比较
             String expectedSignature = generateHmacSignature(timestamp);
-            return expectedSignature.equals(signature);
+            return MessageDigest.isEqual(expectedSignature.getBytes(StandardCharsets.UTF_8),
+                    signature.getBytes(StandardCharsets.UTF_8));
         } catch (Exception e) {
             return false;
         }
@@ -117,121 +158,43 @@ public class OriginHandshakeInterceptor implements HandshakeInterceptor {
      * 生成 HMAC 签名
      * @param timestamp 时间戳
      * @return 签名字符串
-     * @throws NoSuchAlgorithmException
-     * @throws InvalidKeyException
      */
-    private String generateHmacSignature(long timestamp) throws NoSuchAlgorithmException, InvalidKeyException {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        SecretKeySpec keySpec = new SecretKeySpec(SECRET.getBytes(), "HmacSHA256");
-        mac.init(keySpec);
-        byte[] result = mac.doFinal(String.valueOf(timestamp).getBytes());
+    public String generateHmacSignature(long timestamp) {
+        byte[] result = MAC.get().doFinal(String.valueOf(timestamp).getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(result);
     }
 
+    private static Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(SECRET_KEY);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC 初始化失败", e);
+        }
+    }
+
     /**
      * 检查客户端 IP 是否允许连接
      * @param remoteAddress 客户端 IP 地址
      * @return 是否允许
      */
-    private boolean isIpAllowed(String remoteAddress) {
-        if (remoteAddress == null || remoteAddress.isEmpty()) {
+    private boolean isIpAllowed(InetAddress remoteAddress) {
+        if (remoteAddress == null) {
             return false;
         }
 
         // 检查黑名单
-        for (String pattern : ipBlacklist) {
-            if (matchIpPattern(remoteAddress, pattern)) {
-                return false;
-            }
-        }
-
-        // 白名单为空表示不限制
-        if (ipWhitelist.isEmpty()) {
-            return true;
-        }
-
-        // 检查是否匹配白名单
-        for (String pattern : ipWhitelist) {
-            if (matchIpPattern(remoteAddress, pattern)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    /**
-     * 匹配 IP 地址与模式（支持 CIDR 和通配符）
-     * @param ip IP 地址
-     * @param pattern 模式（如 192.168.1.*, 10.0.0.1/24）
-     * @return 是否匹配
-     */
-    private boolean matchIpPattern(String ip, String pattern) {
-        try {
-            if (pattern.contains("/")) {
-                // CIDR 格式
-                try {
-                    InetAddress ipAddress = InetAddress.getByName(ip);
-                    InetAddress networkAddress = InetAddress.getByName(pattern.split("/")[0]);
-                    int prefixLength = Integer.parseInt(pattern.split("/")[1]);
-                            
-                    // 计算子网掩码
-                    int mask = 0xFFFFFFFF << (32 - prefixLength);
-                            
-                    // 比较IP地址是否在指定的子网范围内
-                    int ipInt = bytesToInt(ipAddress.getAddress());
-                    int networkInt = bytesToInt(networkAddress.getAddress());
-                            
-                    return (ipInt & mask) == (networkInt & mask);
-                } catch (Exception e) {
-                    return false;
-                }
-            } else if (pattern.contains("*")) {
-                // 通配符格式
-                String regex = pattern.replace(".", "\\.").replace("*", ".*");
-                return ip.matches(regex);
-            } else {
-                // 精确匹配
-                return ip.equals(pattern);
-            }
-        } catch (UnknownHostException e) {
+        if (ipBlacklist.matches(remoteAddress)) {
             return false;
         }
-    }
 
-    /**
-     * 将 CIDR 表达式转换为正则表达式
-     * @param cidr CIDR 表达式
-     * @return 正则表达式
-     */
-    private String patternToRegex(String cidr) {
-        // 修复非法转义字符问题，使用正确的CIDR匹配逻辑
-        String[] parts = cidr.split("/");
-        int prefixLength = Integer.parseInt(parts[1]);
-        
-        // 计算匹配的IP范围
-        String ipPart = parts[0];
-        int mask = 0xFFFFFFFF << (32 - prefixLength);
-        
-        // 返回原始CIDR格式，由InetAddress处理验证
-        return ipPart + "/" + prefixLength;
+        // 白名单为空表示不限制
+        return ipWhitelist.isEmpty() || ipWhitelist.matches(remoteAddress);
     }
 
     @Override
     public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
         // 可记录日志或触发其他事件
     }
-    
-    /**
-     * 将字节数组转换为整数
-     * @param bytes 字节数组
-     * @return 整数值
-     */
-    private int bytesToInt(byte[] bytes) {
-        int value = 0;
-        for (int i = 0; i < 4; i++) {
-            value |= (bytes[i] & 0xFF) << (8 * (3 - i));
-        }
-        return value;
-    }
-}
\ No newline at end of file
+}
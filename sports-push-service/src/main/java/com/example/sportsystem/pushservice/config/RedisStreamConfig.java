@@ -1,60 +1,106 @@
 package com.example.sportsystem.pushservice.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.listener.StreamMessageListenerContainer;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
 import org.springframework.data.redis.stream.StreamListener;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
 import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
-import org.springframework.data.redis.stream.StreamOffset;
-import org.springframework.data.redis.stream.ReadOffset;
-import org.springframework.data.redis.stream.Consumer;
-import org.springframework.data.redis.stream.ObjectRecord;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.time.Duration;
 
 /**
  * Redis Stream 配置类
  * 配置消费者组并注册监听器
  */
 @Configuration
+@Slf4j
 public class RedisStreamConfig {
 
+    // 监听的 Stream 数量（比分、盘口），每个读取请求独占一个轮询线程
+    private static final int STREAM_COUNT = 2;
+
     @Value("${websocket.redis.stream.match-stream}")
     private String matchStreamKey;
 
     @Value("${websocket.redis.stream.odds-stream}")
     private String oddsStreamKey;
 
+    // 单次 XREADGROUP 读取的最大条数
+    @Value("${websocket.redis.stream.batch-size:200}")
+    private int batchSize;
+
+    // XREADGROUP 阻塞等待时间
+    @Value("${websocket.redis.stream.poll-timeout-ms:100}")
+    private long pollTimeoutMs;
+
+    /**
+     * Stream 轮询线程池，按读取请求数量配置，避免默认执行器无上限创建线程
+     * @return 线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor streamListenerExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(STREAM_COUNT);
+        executor.setMaxPoolSize(STREAM_COUNT);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("redis-stream-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
     /**
      * 创建并配置 Redis Stream 消费者容器
      * @param connectionFactory Redis 连接工厂
      * @param streamListener 自定义 Stream 监听器
+     * @param streamListenerExecutor Stream 轮询线程池
+     * @param consumerGroups 本节点的消费者组（由集群模式决定）
      * @return StreamMessageListenerContainer 实例
      */
     @Bean
     public StreamMessageListenerContainer<String, ObjectRecord<String, String>> streamMessageListenerContainer(
             RedisConnectionFactory connectionFactory,
-            StreamListener<String, ObjectRecord<String, String>> streamListener) {
+            StreamListener<String, ObjectRecord<String, String>> streamListener,
+            ThreadPoolTaskExecutor streamListenerExecutor,
+            StreamConsumerGroups consumerGroups) {
+
+        Consumer consumer = Consumer.from(consumerGroups.getConsumerGroup(), consumerGroups.getConsumerName());
+        log.info("[Redis Stream] 集群模式: {}, 消费者: {}", consumerGroups.getClusterMode(), consumer);
 
-        // 动态消费者组名（可基于实例ID生成）
-        String consumerGroup = "sports-push-consumer-group";
-        String consumerInstance = generateConsumerInstanceName();
+        // 批量读取：每次 XREADGROUP 最多读取 batchSize 条，无消息时阻塞 pollTimeout
+        StreamMessageListenerContainerOptions<String, ObjectRecord<String, String>> options =
+                StreamMessageListenerContainerOptions.builder()
+                        .batchSize(batchSize)
+                        .pollTimeout(Duration.ofMillis(pollTimeoutMs))
+                        .executor(streamListenerExecutor)
+                        .errorHandler(e -> log.error("[Redis Stream] 读取消息失败:", e))
+                        .targetType(String.class)
+                        .build();
 
-        // 构建监听请求（支持多个 Stream）
+        // 构建监听请求（支持多个 Stream），由监听器批量确认，读取异常时不取消订阅
         StreamReadRequest<String> matchReadRequest = StreamReadRequest.builder(StreamOffset.create(matchStreamKey, ReadOffset.lastConsumed()))
-                .consumer(Consumer.from(consumerGroup, consumerInstance))
+                .consumer(consumer)
+                .autoAcknowledge(false)
+                .cancelOnError(e -> false)
                 .build();
 
         StreamReadRequest<String> oddsReadRequest = StreamReadRequest.builder(StreamOffset.create(oddsStreamKey, ReadOffset.lastConsumed()))
-                .consumer(Consumer.from(consumerGroup, consumerInstance))
+                .consumer(consumer)
+                .autoAcknowledge(false)
+                .cancelOnError(e -> false)
                 .build();
 
         // 创建容器并注册监听器
         StreamMessageListenerContainer<String, ObjectRecord<String, String>> container =
-                StreamMessageListenerContainer.create(connectionFactory, streamListener);
+                StreamMessageListenerContainer.create(connectionFactory, options);
 
         container.register(matchReadRequest, streamListener);
         container.register(oddsReadRequest, streamListener);
@@ -62,13 +108,4 @@ public class RedisStreamConfig {
 
         return container;
     }
-
-    private String generateConsumerInstanceName() {
-        try {
-            String hostName = InetAddress.getLocalHost().getHostName();
-            return "push-service-instance-" + hostName + "-" + System.currentTimeMillis() % 1000;
-        } catch (UnknownHostException e) {
-            return "push-service-instance-default-" + System.currentTimeMillis() % 1000;
-        }
-    }
-}
\ No newline at end of file
+}
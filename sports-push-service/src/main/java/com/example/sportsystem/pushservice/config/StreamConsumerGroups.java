@@ -0,0 +1,119 @@
+package com.example.sportsystem.pushservice.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Redis Stream 消费者组管理
+ * 根据集群模式确定本节点使用的消费者组与消费者名称，并在启动时创建消费者组
+ */
+@Component
+@Slf4j
+public class StreamConsumerGroups {
+
+    private final StringRedisTemplate redisTemplate;
+    private final ClusterMode clusterMode;
+    private final List<String> streamKeys;
+    private final String nodeId;
+    private final String consumerGroup;
+    private final String consumerName;
+
+    public StreamConsumerGroups(StringRedisTemplate redisTemplate,
+                                @Value("${websocket.cluster.mode:SHARED}") ClusterMode clusterMode,
+                                @Value("${websocket.redis.stream.consumer-group:sports-push-consumer-group}") String baseGroup,
+                                @Value("${websocket.redis.stream.match-stream}") String matchStreamKey,
+                                @Value("${websocket.redis.stream.odds-stream}") String oddsStreamKey,
+                                @Value("${server.port:8083}") int serverPort) {
+        this.redisTemplate = redisTemplate;
+        this.clusterMode = clusterMode;
+        this.streamKeys = List.of(matchStreamKey, oddsStreamKey);
+        // 节点ID由主机名与端口组成，重启后保持不变，可复用原有的消费者组
+        this.nodeId = hostName() + "-" + serverPort;
+        if (clusterMode == ClusterMode.BROADCAST) {
+            this.consumerGroup = baseGroup + ":" + nodeId;
+            this.consumerName = nodeId;
+        } else {
+            this.consumerGroup = baseGroup;
+            // 消费者名称不带随机后缀，重启后仍是同一消费者，不会留下持有 PEL 条目的孤儿消费者
+            this.consumerName = "push-service-instance-" + nodeId;
+        }
+    }
+
+    /**
+     * 确保消费者组存在（Stream 不存在时一并创建），新建的组从最新消息开始消费
+     */
+    @PostConstruct
+    public void createGroups() {
+        if (clusterMode == ClusterMode.SHARED) {
+            log.warn("[Redis Stream] 集群模式为 SHARED，每条更新只投递给一个节点；多节点部署请配置 websocket.cluster.mode=BROADCAST");
+        }
+        for (String streamKey : streamKeys) {
+            try {
+                redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                        .xGroupCreate(streamKey.getBytes(StandardCharsets.UTF_8), consumerGroup, ReadOffset.latest(), true));
+                log.info("[Redis Stream] 已创建消费者组: {}@{}", consumerGroup, streamKey);
+            } catch (Exception e) {
+                // BUSYGROUP：消费者组已存在
+                log.debug("[Redis Stream] 消费者组已存在: {}@{}", consumerGroup, streamKey);
+            }
+        }
+    }
+
+    /**
+     * 广播模式下节点下线时删除自身的消费者组，避免 Redis 中残留无人消费的组
+     * （节点上的会话已随节点关闭，未投递的更新无需保留）
+     */
+    @PreDestroy
+    public void destroyGroups() {
+        if (clusterMode != ClusterMode.BROADCAST) {
+            return;
+        }
+        for (String streamKey : streamKeys) {
+            try {
+                redisTemplate.opsForStream().destroyGroup(streamKey, consumerGroup);
+                log.info("[Redis Stream] 已删除节点消费者组: {}@{}", consumerGroup, streamKey);
+            } catch (Exception e) {
+                log.warn("[Redis Stream] 删除节点消费者组失败: {}@{}", consumerGroup, streamKey);
+            }
+        }
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "default";
+        }
+    }
+
+    public ClusterMode getClusterMode() {
+        return clusterMode;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+
+    public String getConsumerName() {
+        return consumerName;
+    }
+
+    public List<String> getStreamKeys() {
+        return streamKeys;
+    }
+}
@@ -1,12 +1,13 @@
 package com.example.sportsystem.pushservice.config;
 
+import com.example.sportsystem.pushservice.handler.WebSocketHandshakeHandler;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
-import org.springframework.web.socket.config.annotation.WebSocketRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
 /**
  * WebSocket 主配置类
@@ -17,9 +18,15 @@ import org.springframework.web.socket.config.annotation.WebSocketRegistry;
 public class WebSocketConfig implements WebSocketConfigurer {
 
     private final WebSocketHandshakeHandler handshakeHandler;
+    private final OriginHandshakeInterceptor originHandshakeInterceptor;
+    private final CompressionHandshakeHandler compressionHandshakeHandler;
 
-    public WebSocketConfig(WebSocketHandshakeHandler handshakeHandler) {
+    public WebSocketConfig(WebSocketHandshakeHandler handshakeHandler,
+                           OriginHandshakeInterceptor originHandshakeInterceptor,
+                           CompressionHandshakeHandler compressionHandshakeHandler) {
         this.handshakeHandler = handshakeHandler;
+        this.originHandshakeInterceptor = originHandshakeInterceptor;
+        this.compressionHandshakeHandler = compressionHandshakeHandler;
     }
 
     /**
@@ -27,9 +34,10 @@ public class WebSocketConfig implements WebSocketConfigurer {
      * @param registry WebSocket 注册器
      */
     @Override
-    public void registerWebSocketHandlers(WebSocketRegistry registry) {
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         registry.addHandler(handshakeHandler, "/ws")
-                .addInterceptors(new OriginHandshakeInterceptor()) // 添加拦截器防止非法跨域访问
+                .setHandshakeHandler(compressionHandshakeHandler) // 协商 permessage-deflate 压缩
+                .addInterceptors(originHandshakeInterceptor) // 添加拦截器防止非法跨域访问
                 .setAllowedOrigins("*"); // 可根据环境替换为白名单
     }
 
@@ -0,0 +1,71 @@
+package com.example.sportsystem.pushservice.controller;
+
+import com.example.sportsystem.pushservice.service.SessionDrainService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * 节点排空管理接口（发布前手动触发排空，观察迁移进度）
+ * 与 /ws 共用对外端口，调用时须在 X-Admin-Token 请求头中携带 websocket.drain.admin-token；
+ * 未配置该令牌时接口禁用（SIGTERM 触发的排空不受影响）
+ */
+@RestController
+@RequestMapping("/api/v1/admin/drain")
+public class DrainController {
+
+    private static final String ADMIN_TOKEN_HEADER = "X-Admin-Token";
+
+    private final SessionDrainService drainService;
+    private final byte[] adminToken;
+
+    public DrainController(SessionDrainService drainService,
+                           @Value("${websocket.drain.admin-token:}") String adminToken) {
+        this.drainService = drainService;
+        this.adminToken = adminToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 开始排空：停止接受新连接、注销服务并分批通知客户端迁移
+     * @param token 管理令牌
+     * @return 排空进度
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> startDrain(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        if (!isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        drainService.startDrain();
+        return ResponseEntity.ok(drainService.getStats());
+    }
+
+    /**
+     * 查询排空进度
+     * @param token 管理令牌
+     * @return 排空进度
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getDrainStatus(@RequestHeader(value = ADMIN_TOKEN_HEADER, required = false) String token) {
+        if (!isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(drainService.getStats());
+    }
+
+    /**
+     * 以固定时间比较管理令牌
+     */
+    private boolean isAuthorized(String token) {
+        return adminToken.length > 0 && token != null
+                && MessageDigest.isEqual(adminToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+}
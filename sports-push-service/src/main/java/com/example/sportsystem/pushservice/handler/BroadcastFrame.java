@@ -0,0 +1,183 @@
+package com.example.sportsystem.pushservice.handler;
+
+import com.example.sportsystem.pushservice.codec.DeltaCodec;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * 共享的推送帧
+ * 每次更新只做一次 JSON 序列化与 TextMessage 封装，所有订阅者共享同一实例。
+ * 文本帧发送时容器（Tomcat 的 sendText）仍会为每个连接各做一次 UTF-8 编码，
+ * 这里保存的字节只用于统计长度与压缩采样；二进制帧的字节才真正由所有会话共享
+ * <p>
+ * 带版本的帧（比分、盘口）额外携带版本键与序列号，供启用增量协议的会话在发送时
+ * 选择增量帧或全量帧；比分、盘口帧还可携带二进制编码器，供二进制格式的会话使用。
+ * 各种编码均在首次使用时生成一次，之后所有会话共享
+ */
+public final class BroadcastFrame {
+
+    private final TextMessage textMessage;
+
+    // 以下字段仅带版本的帧使用
+    private final String kind;
+    private final String key;
+    private final long seq;
+    private final long baseSeq;
+    private final ObjectNode fields;
+    private final ObjectNode changed;
+    private volatile TextMessage snapshotMessage;
+    private volatile TextMessage deltaMessage;
+
+    // 二进制编码器（无则为 null）
+    private final Supplier<byte[]> binaryEncoder;
+    private volatile byte[] binaryPayload;
+
+    private BroadcastFrame(TextMessage textMessage, String kind, String key, long seq, long baseSeq,
+                           ObjectNode fields, ObjectNode changed, Supplier<byte[]> binaryEncoder) {
+        this.textMessage = textMessage;
+        this.kind = kind;
+        this.key = key;
+        this.seq = seq;
+        this.baseSeq = baseSeq;
+        this.fields = fields;
+        this.changed = changed;
+        this.binaryEncoder = binaryEncoder;
+    }
+
+    /**
+     * 根据消息内容创建推送帧
+     * @param payload 消息内容（JSON）
+     * @return 推送帧
+     */
+    public static BroadcastFrame of(String payload) {
+        return of(payload, null);
+    }
+
+    /**
+     * 根据消息内容创建推送帧
+     * @param payload 消息内容（JSON）
+     * @param binaryEncoder 二进制编码器（可为 null）
+     * @return 推送帧
+     */
+    public static BroadcastFrame of(String payload, Supplier<byte[]> binaryEncoder) {
+        // TextMessage(byte[]) 同时保留字符串与字节形式；发送文本帧时容器仍按连接重新编码字符串
+        return new BroadcastFrame(encode(payload), null, null, 0, 0, null, null, binaryEncoder);
+    }
+
+    /**
+     * 创建带版本的推送帧，序列号在同一版本键的上一帧基础上递增
+     * @param kind 帧类别（score/odds）
+     * @param key 版本键（比分为赛事ID，盘口为盘口键）
+     * @param payload 消息内容（JSON 对象）
+     * @param previous 同一版本键的上一帧（无则为 null）
+     * @param binaryEncoder 二进制编码器（可为 null）
+     * @return 推送帧（消息不是 JSON 对象时退化为普通帧）
+     */
+    public static BroadcastFrame versioned(String kind, String key, String payload, BroadcastFrame previous,
+                                           Supplier<byte[]> binaryEncoder) {
+        ObjectNode fields = DeltaCodec.parse(payload);
+        if (fields == null) {
+            return of(payload, binaryEncoder);
+        }
+        boolean chained = previous != null && previous.isVersioned() && key.equals(previous.key);
+        long seq = chained ? previous.seq + 1 : 1;
+        long baseSeq = chained ? previous.seq : 0;
+        ObjectNode changed = chained ? DeltaCodec.diff(previous.fields, fields) : null;
+        return new BroadcastFrame(encode(payload), kind, key, seq, baseSeq, fields, changed, binaryEncoder);
+    }
+
+    private static TextMessage encode(String payload) {
+        return new TextMessage(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 获取共享的文本消息（原始 JSON，未启用增量协议的会话使用）
+     * @return TextMessage 实例
+     */
+    public TextMessage getTextMessage() {
+        return textMessage;
+    }
+
+    /**
+     * 是否为带版本的帧
+     * @return 是否带版本
+     */
+    public boolean isVersioned() {
+        return key != null;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * 该帧是否可作为增量帧发送给已收到指定序列号的会话
+     * @param lastSeq 会话已收到的该版本键的序列号
+     * @return 是否可发送增量帧
+     */
+    public boolean isDeltaFrom(long lastSeq) {
+        return changed != null && baseSeq == lastSeq;
+    }
+
+    /**
+     * 获取全量帧编码（首次调用时生成）
+     * @return TextMessage 实例
+     */
+    public TextMessage getSnapshotMessage() {
+        TextMessage message = snapshotMessage;
+        if (message == null) {
+            message = encode(DeltaCodec.encodeSnapshot(kind, key, seq, fields));
+            snapshotMessage = message;
+        }
+        return message;
+    }
+
+    /**
+     * 获取增量帧编码（首次调用时生成）
+     * @return TextMessage 实例
+     */
+    public TextMessage getDeltaMessage() {
+        TextMessage message = deltaMessage;
+        if (message == null) {
+            message = encode(DeltaCodec.encodeDelta(kind, key, seq, baseSeq, changed));
+            deltaMessage = message;
+        }
+        return message;
+    }
+
+    /**
+     * 是否支持二进制编码
+     * @return 是否支持
+     */
+    public boolean hasBinary() {
+        return binaryEncoder != null;
+    }
+
+    /**
+     * 获取二进制编码（首次调用时生成；调用方不得修改返回的数组）
+     * @return 二进制帧
+     */
+    public byte[] getBinaryPayload() {
+        byte[] payload = binaryPayload;
+        if (payload == null) {
+            payload = binaryEncoder.get();
+            binaryPayload = payload;
+        }
+        return payload;
+    }
+
+    /**
+     * 获取编码后的字节长度
+     * @return 字节数
+     */
+    public int getPayloadLength() {
+        return textMessage.getPayloadLength();
+    }
+}
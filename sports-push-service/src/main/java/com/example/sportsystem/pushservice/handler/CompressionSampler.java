@@ -0,0 +1,109 @@
+package com.example.sportsystem.pushservice.handler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * WebSocket 压缩效果抽样统计
+ * <p>
+ * 实际压缩由容器在协商 permessage-deflate 后完成，无法直接观测；此处按采样率对已启用压缩的会话发出的帧
+ * 用相同参数（raw deflate、默认级别、SYNC_FLUSH）重新压缩，估算压缩率与每帧 CPU 耗时，
+ * 并按阈值分别统计小帧与大帧，用于调整压缩阈值。保留上下文时每个写线程复用一个 Deflater，
+ * 与容器按会话保留上下文的效果近似。
+ */
+@Component
+public class CompressionSampler {
+
+    private final int sampleRate;
+    private final int thresholdBytes;
+    private final boolean contextTakeover;
+
+    private final AtomicLong counter = new AtomicLong();
+    private final Bucket small = new Bucket();
+    private final Bucket large = new Bucket();
+
+    // 每个写线程一个压缩器与输出缓冲
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    /**
+     * 单个大小区间的统计
+     */
+    private static final class Bucket {
+        private final LongAdder frames = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> stats = new HashMap<>();
+            long count = frames.sum();
+            long raw = rawBytes.sum();
+            stats.put("sampled_frames", count);
+            stats.put("raw_bytes", raw);
+            stats.put("compressed_bytes", compressedBytes.sum());
+            stats.put("compression_ratio", raw > 0 ? (double) compressedBytes.sum() / raw : 1.0);
+            stats.put("avg_compress_nanos", count > 0 ? nanos.sum() / count : 0);
+            return stats;
+        }
+    }
+
+    public CompressionSampler(@Value("${websocket.compression.sample-rate:100}") int sampleRate,
+                              @Value("${websocket.compression.threshold-bytes:256}") int thresholdBytes,
+                              @Value("${websocket.compression.context-takeover:true}") boolean contextTakeover) {
+        this.sampleRate = Math.max(1, sampleRate);
+        this.thresholdBytes = thresholdBytes;
+        this.contextTakeover = contextTakeover;
+    }
+
+    /**
+     * 按采样率统计一帧的压缩效果（在写线程上调用）
+     * @param payload 帧内容
+     */
+    void sample(byte[] payload) {
+        if (counter.incrementAndGet() % sampleRate != 0) {
+            return;
+        }
+        Deflater deflater = deflaters.get();
+        byte[] buffer = buffers.get();
+        long start = System.nanoTime();
+        if (!contextTakeover) {
+            deflater.reset();
+        }
+        deflater.setInput(payload);
+        long compressed = 0;
+        int written;
+        do {
+            written = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            compressed += written;
+        } while (written == buffer.length);
+        long elapsed = System.nanoTime() - start;
+
+        Bucket bucket = payload.length < thresholdBytes ? small : large;
+        bucket.frames.increment();
+        bucket.rawBytes.add(payload.length);
+        // SYNC_FLUSH 末尾的 4 字节空块不在线路上传输
+        bucket.compressedBytes.add(Math.max(0, compressed - 4));
+        bucket.nanos.add(elapsed);
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sample_rate", sampleRate);
+        stats.put("threshold_bytes", thresholdBytes);
+        stats.put("context_takeover", contextTakeover);
+        stats.put("below_threshold", small.toMap());
+        stats.put("above_threshold", large.toMap());
+        return stats;
+    }
+}
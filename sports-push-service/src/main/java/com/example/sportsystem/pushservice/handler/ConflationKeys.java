@@ -0,0 +1,21 @@
+package com.example.sportsystem.pushservice.handler;
+
+import com.example.sportsystem.common.model.OddsUpdateMessage;
+
+/**
+ * 推送帧合并键
+ */
+public final class ConflationKeys {
+
+    private ConflationKeys() {
+    }
+
+    /**
+     * 盘口合并键：同一赛事、同一博彩公司、同一盘口类型只保留最新值
+     * @param message 盘口消息
+     * @return 合并键
+     */
+    public static String odds(OddsUpdateMessage message) {
+        return message.getMatchId() + ':' + message.getBookmaker() + ':' + message.getOddsType();
+    }
+}
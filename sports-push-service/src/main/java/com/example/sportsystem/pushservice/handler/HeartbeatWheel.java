@@ -0,0 +1,72 @@
+package com.example.sportsystem.pushservice.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 心跳时间轮
+ * 会话按 ID 哈希分散到各个槽位，每个 tick 只处理一个槽位，
+ * 一个心跳周期内每个会话恰好被访问一次，避免全部会话在同一时刻发送心跳
+ */
+final class HeartbeatWheel {
+
+    private final Set<OutboundSessionQueue>[] buckets;
+    // 当前 tick 指向的槽位（仅调度线程访问）
+    private int cursor;
+
+    final LongAdder pingsSent = new LongAdder(); // 已发送心跳数
+    final LongAdder pingsSkipped = new LongAdder(); // 近期活跃而跳过的心跳数
+    final LongAdder sessionsReaped = new LongAdder(); // 清理的失效会话数
+    final LongAdder idleClosed = new LongAdder(); // 因空闲超时关闭的会话数
+
+    /**
+     * @param bucketCount 槽位数（心跳周期 / tick 间隔）
+     */
+    @SuppressWarnings("unchecked")
+    HeartbeatWheel(int bucketCount) {
+        this.buckets = new Set[Math.max(1, bucketCount)];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    void add(OutboundSessionQueue queue) {
+        bucketOf(queue).add(queue);
+    }
+
+    void remove(OutboundSessionQueue queue) {
+        bucketOf(queue).remove(queue);
+    }
+
+    /**
+     * 处理当前槽位中的会话并前进一格
+     * @param visitor 会话处理逻辑（心跳、空闲检测、清理）
+     */
+    void tick(Consumer<OutboundSessionQueue> visitor) {
+        Set<OutboundSessionQueue> bucket = buckets[cursor];
+        cursor = (cursor + 1) % buckets.length;
+        bucket.forEach(visitor);
+    }
+
+    private Set<OutboundSessionQueue> bucketOf(OutboundSessionQueue queue) {
+        return buckets[Math.floorMod(queue.getSession().getId().hashCode(), buckets.length)];
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("buckets", buckets.length);
+        stats.put("pings_sent", pingsSent.sum());
+        stats.put("pings_skipped", pingsSkipped.sum());
+        stats.put("sessions_reaped", sessionsReaped.sum());
+        stats.put("idle_closed", idleClosed.sum());
+        return stats;
+    }
+}
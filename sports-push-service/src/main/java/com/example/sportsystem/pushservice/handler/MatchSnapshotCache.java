@@ -0,0 +1,239 @@
+package com.example.sportsystem.pushservice.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 进行中赛事的最新状态快照（本地内存，有界）
+ * 每场赛事保存最新比分帧与每个盘口键（赛事:公司:盘口类型）的最新盘口帧，
+ * 新订阅者订阅时立即下发，无需等待下一次更新或回放 Redis 历史。
+ * 赛事结束时快照被淘汰，但保留一段时间的终场版本（墓碑），迟到或重投的旧比分、盘口不会重新创建快照
+ */
+@Component
+@Slf4j
+public class MatchSnapshotCache {
+
+    // 锁分段数量（2 的幂），同一赛事的快照更新、推送与新订阅在同一把锁下进行，保证订阅者不会在新帧之后收到旧快照
+    private static final int LOCK_STRIPES = 64;
+
+    private final Map<String, MatchSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // 最多缓存的赛事数，超出时淘汰最久未更新的赛事
+    private final int maxMatches;
+    // 表示赛事已结束的状态值（忽略大小写），收到后淘汰该赛事快照
+    private final Set<String> finishedStatuses;
+    // 已结束赛事的墓碑保留时间
+    private final long finishedTtlMs;
+    // 已结束赛事的墓碑：赛事ID -> 终场版本与过期时间
+    private final Map<String, Tombstone> finished = new ConcurrentHashMap<>();
+
+    /**
+     * 已结束赛事的终场比分版本
+     */
+    private record Tombstone(long version, long expiresAt) {
+    }
+
+    /**
+     * 单场赛事快照
+     */
+    private static final class MatchSnapshot {
+        private volatile BroadcastFrame score;
+        private volatile long scoreVersion = -1;
+        private final Map<String, BroadcastFrame> odds = new ConcurrentHashMap<>();
+        // 盘口键 -> 快照中盘口的数据源时间戳
+        private final Map<String, Long> oddsTimestamps = new ConcurrentHashMap<>();
+        private volatile long updatedAt = System.currentTimeMillis();
+    }
+
+    public MatchSnapshotCache(@Value("${websocket.snapshot.max-matches:5000}") int maxMatches,
+                              @Value("${websocket.snapshot.finished-statuses:FINISHED,ENDED,FT,CANCELLED}") String finishedStatuses,
+                              @Value("${websocket.snapshot.finished-ttl-ms:600000}") long finishedTtlMs) {
+        this.maxMatches = maxMatches;
+        this.finishedTtlMs = finishedTtlMs;
+        this.finishedStatuses = Stream.of(finishedStatuses.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .map(String::toUpperCase)
+                .collect(Collectors.toUnmodifiableSet());
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * 获取赛事对应的分段锁
+     * @param matchId 赛事ID
+     * @return 锁对象
+     */
+    Object lockFor(String matchId) {
+        return locks[matchId.hashCode() & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * 更新比分快照，赛事结束时淘汰快照并留下墓碑（调用方需持有 {@link #lockFor} 锁）
+     * 版本更高的非终场比分（如终场后的更正）会清除墓碑并重新创建快照
+     * @param matchId 赛事ID
+     * @param status 比赛状态
+     * @param version 比分版本
+     * @param frame 比分帧
+     */
+    void updateScore(String matchId, String status, long version, BroadcastFrame frame) {
+        if (status != null && finishedStatuses.contains(status.toUpperCase())) {
+            if (finished.size() >= maxMatches) {
+                long now = System.currentTimeMillis();
+                finished.values().removeIf(tombstone -> tombstone.expiresAt() <= now);
+            }
+            finished.put(matchId, new Tombstone(version, System.currentTimeMillis() + finishedTtlMs));
+            if (snapshots.remove(matchId) != null) {
+                log.debug("[WebSocket] 赛事已结束，淘汰快照: {}", matchId);
+            }
+            return;
+        }
+        finished.remove(matchId);
+        MatchSnapshot snapshot = getOrCreate(matchId);
+        snapshot.score = frame;
+        snapshot.scoreVersion = version;
+        snapshot.updatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 更新盘口快照（调用方需持有 {@link #lockFor} 锁）
+     * @param matchId 赛事ID
+     * @param oddsKey 盘口键
+     * @param timestamp 盘口的数据源时间戳
+     * @param frame 盘口帧
+     */
+    void updateOdds(String matchId, String oddsKey, long timestamp, BroadcastFrame frame) {
+        MatchSnapshot snapshot = getOrCreate(matchId);
+        snapshot.odds.put(oddsKey, frame);
+        snapshot.oddsTimestamps.put(oddsKey, timestamp);
+        snapshot.updatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取最新比分帧（调用方需持有 {@link #lockFor} 锁）
+     * @param matchId 赛事ID
+     * @return 比分帧，无快照时返回 null
+     */
+    BroadcastFrame getScore(String matchId) {
+        MatchSnapshot snapshot = snapshots.get(matchId);
+        return snapshot != null ? snapshot.score : null;
+    }
+
+    /**
+     * 获取快照中比分的版本（无需持锁，用于提前过滤过期比分）
+     * @param matchId 赛事ID
+     * @return 比分版本，已结束的赛事返回终场版本，无快照时返回 -1
+     */
+    public long getScoreVersion(String matchId) {
+        MatchSnapshot snapshot = snapshots.get(matchId);
+        if (snapshot != null) {
+            return snapshot.scoreVersion;
+        }
+        Tombstone tombstone = getTombstone(matchId);
+        return tombstone != null ? tombstone.version() : -1;
+    }
+
+    /**
+     * 赛事是否已结束（墓碑保留期内）
+     * @param matchId 赛事ID
+     * @return 是否已结束
+     */
+    public boolean isFinished(String matchId) {
+        return getTombstone(matchId) != null;
+    }
+
+    private Tombstone getTombstone(String matchId) {
+        Tombstone tombstone = finished.get(matchId);
+        if (tombstone != null && tombstone.expiresAt() <= System.currentTimeMillis()) {
+            finished.remove(matchId, tombstone);
+            return null;
+        }
+        return tombstone;
+    }
+
+    /**
+     * 获取快照中盘口的数据源时间戳（无需持锁，用于提前过滤过期盘口）
+     * @param matchId 赛事ID
+     * @param oddsKey 盘口键
+     * @return 时间戳，无快照时返回 -1
+     */
+    public long getOddsTimestamp(String matchId, String oddsKey) {
+        MatchSnapshot snapshot = snapshots.get(matchId);
+        return snapshot != null ? snapshot.oddsTimestamps.getOrDefault(oddsKey, -1L) : -1;
+    }
+
+    /**
+     * 获取最新盘口帧（调用方需持有 {@link #lockFor} 锁）
+     * @param matchId 赛事ID
+     * @param oddsKey 盘口键
+     * @return 盘口帧，无快照时返回 null
+     */
+    BroadcastFrame getOdds(String matchId, String oddsKey) {
+        MatchSnapshot snapshot = snapshots.get(matchId);
+        return snapshot != null ? snapshot.odds.get(oddsKey) : null;
+    }
+
+    /**
+     * 遍历赛事快照中的所有帧（先比分，后盘口）
+     * @param matchId 赛事ID
+     * @param consumer 接收合并键（比分帧为 null）与推送帧
+     */
+    void forEachFrame(String matchId, BiConsumer<String, BroadcastFrame> consumer) {
+        MatchSnapshot snapshot = snapshots.get(matchId);
+        if (snapshot == null) {
+            return;
+        }
+        BroadcastFrame score = snapshot.score;
+        if (score != null) {
+            consumer.accept(null, score);
+        }
+        snapshot.odds.forEach(consumer);
+    }
+
+    private MatchSnapshot getOrCreate(String matchId) {
+        MatchSnapshot snapshot = snapshots.get(matchId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        if (snapshots.size() >= maxMatches) {
+            evictOldest();
+        }
+        return snapshots.computeIfAbsent(matchId, k -> new MatchSnapshot());
+    }
+
+    /**
+     * 淘汰最久未更新的赛事（仅在新增赛事且缓存已满时执行）
+     */
+    private void evictOldest() {
+        String oldest = null;
+        long oldestUpdatedAt = Long.MAX_VALUE;
+        for (Map.Entry<String, MatchSnapshot> entry : snapshots.entrySet()) {
+            if (entry.getValue().updatedAt < oldestUpdatedAt) {
+                oldestUpdatedAt = entry.getValue().updatedAt;
+                oldest = entry.getKey();
+            }
+        }
+        if (oldest != null) {
+            snapshots.remove(oldest);
+            log.warn("[WebSocket] 快照缓存已满，淘汰赛事: {}", oldest);
+        }
+    }
+
+    /**
+     * 当前缓存的赛事数
+     * @return 赛事数
+     */
+    public int size() {
+        return snapshots.size();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.sportsystem.pushservice.handler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 单个会话订阅的赛事集合
+ * 使用不可变的紧凑数组存储（单个会话订阅数通常很少），读取无需加锁，
+ * 增删操作返回新实例，耗时与该会话的订阅数成正比
+ */
+public final class MatchSubscriptions {
+
+    public static final MatchSubscriptions EMPTY = new MatchSubscriptions(new String[0]);
+
+    private final String[] matchIds;
+
+    private MatchSubscriptions(String[] matchIds) {
+        this.matchIds = matchIds;
+    }
+
+    /**
+     * 添加赛事订阅
+     * @param matchId 赛事ID
+     * @return 新的订阅集合（已存在时返回自身）
+     */
+    public MatchSubscriptions with(String matchId) {
+        if (contains(matchId)) {
+            return this;
+        }
+        String[] copy = Arrays.copyOf(matchIds, matchIds.length + 1);
+        copy[matchIds.length] = matchId;
+        return new MatchSubscriptions(copy);
+    }
+
+    /**
+     * 移除赛事订阅
+     * @param matchId 赛事ID
+     * @return 新的订阅集合（不存在时返回自身）
+     */
+    public MatchSubscriptions without(String matchId) {
+        int index = indexOf(matchId);
+        if (index < 0) {
+            return this;
+        }
+        if (matchIds.length == 1) {
+            return EMPTY;
+        }
+        String[] copy = new String[matchIds.length - 1];
+        System.arraycopy(matchIds, 0, copy, 0, index);
+        System.arraycopy(matchIds, index + 1, copy, index, matchIds.length - index - 1);
+        return new MatchSubscriptions(copy);
+    }
+
+    /**
+     * 是否已订阅指定赛事
+     * @param matchId 赛事ID
+     * @return 是否订阅
+     */
+    public boolean contains(String matchId) {
+        return indexOf(matchId) >= 0;
+    }
+
+    /**
+     * 遍历订阅的赛事
+     * @param action 处理逻辑
+     */
+    public void forEach(Consumer<String> action) {
+        for (String matchId : matchIds) {
+            action.accept(matchId);
+        }
+    }
+
+    public int size() {
+        return matchIds.length;
+    }
+
+    public boolean isEmpty() {
+        return matchIds.length == 0;
+    }
+
+    /**
+     * 转换为只读集合（用于响应或统计）
+     * @return 赛事ID集合
+     */
+    public Set<String> toSet() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(matchIds)));
+    }
+
+    private int indexOf(String matchId) {
+        for (int i = 0; i < matchIds.length; i++) {
+            if (matchIds[i].equals(matchId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
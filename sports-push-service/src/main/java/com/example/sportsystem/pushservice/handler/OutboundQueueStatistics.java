@@ -0,0 +1,100 @@
+package com.example.sportsystem.pushservice.handler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 会话发送队列统计（所有会话共享）
+ */
+public class OutboundQueueStatistics {
+
+    private final LongAdder queuedFrames = new LongAdder(); // 当前排队帧数
+    private final LongAdder sentFrames = new LongAdder(); // 已发送帧数
+    private final LongAdder droppedFrames = new LongAdder(); // 溢出丢弃帧数
+    private final LongAdder conflatedFrames = new LongAdder(); // 被合并覆盖的帧数
+    private final LongAdder pendingConflatedFrames = new LongAdder(); // 等待 flush 的合并帧数
+    private final LongAdder disconnectedSessions = new LongAdder(); // 因溢出断开的会话数
+    private final LongAdder sendFailures = new LongAdder(); // 发送失败次数
+    private final LongAdder deltaFrames = new LongAdder(); // 增量协议下发送的增量帧数
+    private final LongAdder deltaSnapshotFrames = new LongAdder(); // 增量协议下发送的全量帧数
+    private final LongAdder deltaFullBytes = new LongAdder(); // 增量协议会话按原始 JSON 计算的字节数
+    private final LongAdder deltaSentBytes = new LongAdder(); // 增量协议会话实际发送的字节数
+    private final LongAdder binaryFrames = new LongAdder(); // 二进制格式发送的帧数
+    private final LongAdder binaryJsonBytes = new LongAdder(); // 二进制帧对应的 JSON 字节数
+    private final LongAdder binarySentBytes = new LongAdder(); // 二进制帧实际发送的字节数
+
+    void onEnqueued() {
+        queuedFrames.increment();
+    }
+
+    void onDequeued() {
+        queuedFrames.decrement();
+    }
+
+    void onSent() {
+        sentFrames.increment();
+    }
+
+    void onDropped() {
+        queuedFrames.decrement();
+        droppedFrames.increment();
+    }
+
+    void onConflated() {
+        conflatedFrames.increment();
+    }
+
+    void onConflationPending(int delta) {
+        pendingConflatedFrames.add(delta);
+    }
+
+    void onDisconnected(int discardedFrames) {
+        queuedFrames.add(-discardedFrames);
+        droppedFrames.add(discardedFrames);
+        disconnectedSessions.increment();
+    }
+
+    void onDiscarded(int discardedFrames) {
+        queuedFrames.add(-discardedFrames);
+    }
+
+    void onSendFailure() {
+        sendFailures.increment();
+    }
+
+    void onVersionedSent(boolean delta, int fullBytes, int sentBytes) {
+        (delta ? deltaFrames : deltaSnapshotFrames).increment();
+        deltaFullBytes.add(fullBytes);
+        deltaSentBytes.add(sentBytes);
+    }
+
+    void onBinarySent(int jsonBytes, int sentBytes) {
+        binaryFrames.increment();
+        binaryJsonBytes.add(jsonBytes);
+        binarySentBytes.add(sentBytes);
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued_frames", queuedFrames.sum());
+        stats.put("sent_frames", sentFrames.sum());
+        stats.put("dropped_frames", droppedFrames.sum());
+        stats.put("conflated_frames", conflatedFrames.sum());
+        stats.put("pending_conflated_frames", pendingConflatedFrames.sum());
+        stats.put("disconnected_sessions", disconnectedSessions.sum());
+        stats.put("send_failures", sendFailures.sum());
+        stats.put("delta_frames", deltaFrames.sum());
+        stats.put("delta_snapshot_frames", deltaSnapshotFrames.sum());
+        stats.put("delta_full_bytes", deltaFullBytes.sum());
+        stats.put("delta_sent_bytes", deltaSentBytes.sum());
+        stats.put("binary_frames", binaryFrames.sum());
+        stats.put("binary_json_bytes", binaryJsonBytes.sum());
+        stats.put("binary_sent_bytes", binarySentBytes.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.sportsystem.pushservice.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单个会话的有界发送队列
+ * 推送线程只负责入队，由共享写线程池串行地为每个会话发送，
+ * 既避免慢速客户端阻塞推送线程，也保证同一会话不会被并发写入。
+ * 写入失败时失败的帧放回队首并暂停发送，由 {@link SendFailureHandler} 退避后恢复，只重发给该会话且不打乱帧的顺序
+ */
+@Slf4j
+public final class OutboundSessionQueue {
+
+    // 单次调度最多发送的帧数，避免单个会话长期占用写线程
+    private static final int MAX_FRAMES_PER_DRAIN = 64;
+
+    private final WebSocketSession session;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Executor writer;
+    private final OutboundQueueStatistics statistics;
+    private final SendFailureHandler failureHandler;
+    // 会话推送格式
+    private final WireFormat wireFormat;
+    // 压缩效果采样（会话未协商压缩时为 null）
+    private final CompressionSampler compressionSampler;
+    // 增量协议下每个版本键已发送的序列号（仅写线程更新，重新同步时由请求线程清除）
+    private final Map<String, Long> sentSeq = new ConcurrentHashMap<>();
+
+    private final ArrayDeque<Slot> queue = new ArrayDeque<>();
+    // CONFLATE 策略下按合并键索引的待发送帧
+    private final Map<String, Slot> pendingByKey = new HashMap<>();
+    // 等待下一次 flush 的合并帧（同一合并键只保留最新值）
+    private final Map<String, BroadcastFrame> conflated = new LinkedHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile boolean closed;
+    // 等待退避重试，期间暂停发送
+    private volatile boolean retrying;
+    // 连续写入失败次数（仅写线程访问）
+    private int failedAttempts;
+
+    /**
+     * 待发送帧
+     */
+    private static final class Slot {
+        private final String key;
+        private BroadcastFrame frame;
+
+        private Slot(String key, BroadcastFrame frame) {
+            this.key = key;
+            this.frame = frame;
+        }
+    }
+
+    OutboundSessionQueue(WebSocketSession session, int capacity, OverflowPolicy overflowPolicy,
+                         Executor writer, OutboundQueueStatistics statistics, SendFailureHandler failureHandler,
+                         WireFormat wireFormat, CompressionSampler compressionSampler) {
+        this.session = session;
+        this.failureHandler = failureHandler;
+        this.wireFormat = wireFormat;
+        this.compressionSampler = isCompressed(session) ? compressionSampler : null;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.writer = writer;
+        this.statistics = statistics;
+    }
+
+    /**
+     * 帧入队并调度发送
+     * @param key 合并键（如盘口键，为 null 表示不可合并，如比分帧与控制帧）
+     * @param frame 推送帧
+     * @return 是否入队成功（队列已关闭或因溢出断开时返回 false）
+     */
+    public boolean offer(String key, BroadcastFrame frame) {
+        if (closed) {
+            return false;
+        }
+        boolean accepted;
+        synchronized (queue) {
+            accepted = enqueue(key, frame);
+        }
+        if (accepted) {
+            scheduleDrain();
+        }
+        return accepted;
+    }
+
+    /**
+     * 在持有队列锁时入队
+     * @return 是否入队成功
+     */
+    private boolean enqueue(String key, BroadcastFrame frame) {
+        if (closed) {
+            return false;
+        }
+        if (queue.size() >= capacity && !handleOverflow(key, frame)) {
+            // 已合并到待发送帧时视为成功，因溢出断开时视为失败
+            return !closed;
+        }
+        Slot slot = new Slot(key, frame);
+        queue.addLast(slot);
+        if (key != null && overflowPolicy == OverflowPolicy.CONFLATE) {
+            pendingByKey.put(key, slot);
+        }
+        statistics.onEnqueued();
+        return true;
+    }
+
+    /**
+     * 暂存可合并帧，同一合并键只保留最新值，由定时 flush 统一入队
+     * @param key 合并键
+     * @param frame 推送帧
+     * @return 是否为首个暂存帧（调用方需将本队列加入待刷新集合）
+     */
+    boolean conflate(String key, BroadcastFrame frame) {
+        if (closed) {
+            return false;
+        }
+        synchronized (queue) {
+            boolean first = conflated.isEmpty();
+            if (conflated.put(key, frame) != null) {
+                statistics.onConflated();
+            } else {
+                statistics.onConflationPending(1);
+            }
+            return first;
+        }
+    }
+
+    /**
+     * 将暂存的合并帧移入发送队列
+     */
+    void flushConflated() {
+        synchronized (queue) {
+            if (conflated.isEmpty()) {
+                return;
+            }
+            List<Map.Entry<String, BroadcastFrame>> entries = new ArrayList<>(conflated.entrySet());
+            conflated.clear();
+            statistics.onConflationPending(-entries.size());
+            for (Map.Entry<String, BroadcastFrame> entry : entries) {
+                if (!enqueue(entry.getKey(), entry.getValue()) && closed) {
+                    break;
+                }
+            }
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 处理队列溢出
+     * @return 是否仍需将新帧追加到队尾
+     */
+    private boolean handleOverflow(String key, BroadcastFrame frame) {
+        switch (overflowPolicy) {
+            case CONFLATE:
+                Slot pending = key != null ? pendingByKey.get(key) : null;
+                if (pending != null) {
+                    // 覆盖同一合并键尚未发送的帧，保持其在队列中的位置
+                    pending.frame = frame;
+                    statistics.onConflated();
+                    return false;
+                }
+                dropOldest();
+                return true;
+            case DISCONNECT:
+                disconnect();
+                return false;
+            case DROP_OLDEST:
+            default:
+                dropOldest();
+                return true;
+        }
+    }
+
+    private void dropOldest() {
+        Slot dropped = queue.pollFirst();
+        if (dropped != null) {
+            unindex(dropped);
+            statistics.onDropped();
+        }
+    }
+
+    private void disconnect() {
+        closed = true;
+        int discarded = queue.size();
+        queue.clear();
+        pendingByKey.clear();
+        statistics.onDisconnected(discarded);
+        statistics.onConflationPending(-conflated.size());
+        conflated.clear();
+        log.warn("[WebSocket] 发送队列溢出，断开慢速客户端: {}", session.getId());
+        execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.warn("[WebSocket] 关闭慢速客户端失败: {}", session.getId());
+            }
+        });
+    }
+
+    private void unindex(Slot slot) {
+        if (slot.key != null) {
+            pendingByKey.remove(slot.key, slot);
+        }
+    }
+
+    private Slot poll() {
+        synchronized (queue) {
+            Slot slot = queue.pollFirst();
+            if (slot != null) {
+                unindex(slot);
+                statistics.onDequeued();
+            }
+            return slot;
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            if (!execute(this::drain)) {
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * 串行发送队列中的帧（同一时刻每个会话最多一个写任务）
+     */
+    private void drain() {
+        try {
+            Slot slot;
+            int sent = 0;
+            while (sent < MAX_FRAMES_PER_DRAIN && !closed && !retrying && (slot = poll()) != null) {
+                if (!write(slot.frame)) {
+                    onWriteFailure(slot);
+                    break;
+                }
+                sent++;
+            }
+        } finally {
+            draining.set(false);
+        }
+        if (!closed && !retrying && depth() > 0) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 写入失败：帧放回队首并暂停发送，由失败处理器退避后恢复；处理器放弃时关闭会话（客户端重连后重新获取快照）
+     */
+    private void onWriteFailure(Slot slot) {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            // 队首的帧不再登记合并键，之后同一合并键的新帧按正常方式入队
+            queue.addFirst(new Slot(null, slot.frame));
+            statistics.onEnqueued();
+            retrying = true;
+        }
+        failedAttempts++;
+        if (!failureHandler.onSendFailure(session.getId(), failedAttempts, this::resume)) {
+            abandon();
+        }
+    }
+
+    /**
+     * 退避结束，恢复发送
+     */
+    private void resume() {
+        retrying = false;
+        if (!closed) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * 多次重试仍失败，放弃该会话
+     */
+    private void abandon() {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            statistics.onDiscarded(queue.size());
+            statistics.onConflationPending(-conflated.size());
+            queue.clear();
+            pendingByKey.clear();
+            conflated.clear();
+        }
+        log.warn("[WebSocket] 连续推送失败，关闭会话: {}", session.getId());
+        execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.warn("[WebSocket] 关闭会话失败: {}", session.getId());
+            }
+        });
+    }
+
+    /**
+     * 发送一帧
+     * @return 是否成功（会话已关闭时跳过，视为成功）
+     */
+    private boolean write(BroadcastFrame frame) {
+        try {
+            if (session.isOpen()) {
+                byte[] sent;
+                if (wireFormat == WireFormat.BINARY && frame.hasBinary()) {
+                    sent = frame.getBinaryPayload();
+                    // 每次发送单独包装，避免多个会话共享 ByteBuffer 的读取位置
+                    session.sendMessage(new BinaryMessage(sent));
+                    statistics.onBinarySent(frame.getPayloadLength(), sent.length);
+                } else if (wireFormat == WireFormat.DELTA && frame.isVersioned()) {
+                    sent = writeVersioned(frame);
+                } else {
+                    TextMessage message = frame.getTextMessage();
+                    session.sendMessage(message);
+                    sent = message.asBytes();
+                }
+                statistics.onSent();
+                if (compressionSampler != null) {
+                    compressionSampler.sample(sent);
+                }
+                if (failedAttempts > 0) {
+                    failedAttempts = 0;
+                    failureHandler.onSendRecovered(session.getId());
+                }
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            statistics.onSendFailure();
+            log.warn("[WebSocket] 推送失败: {} - {}", session.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 增量协议：会话已收到上一版本时发送增量帧，否则（首帧、丢帧、合并跳过中间版本、重新同步）发送全量帧
+     * @return 实际发送的字节
+     */
+    private byte[] writeVersioned(BroadcastFrame frame) throws IOException {
+        Long lastSeq = sentSeq.get(frame.getKey());
+        boolean deltaFrame = lastSeq != null && frame.isDeltaFrom(lastSeq);
+        TextMessage message = deltaFrame ? frame.getDeltaMessage() : frame.getSnapshotMessage();
+        session.sendMessage(message);
+        sentSeq.put(frame.getKey(), frame.getSeq());
+        statistics.onVersionedSent(deltaFrame, frame.getPayloadLength(), message.getPayloadLength());
+        return message.asBytes();
+    }
+
+    /**
+     * 会话是否协商了 permessage-deflate 压缩
+     */
+    private static boolean isCompressed(WebSocketSession session) {
+        try {
+            return session.getExtensions().stream()
+                    .anyMatch(extension -> "permessage-deflate".equalsIgnoreCase(extension.getName()));
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 清除指定赛事的已发送序列号，之后该赛事的帧均以全量帧发送
+     * @param matchId 赛事ID
+     */
+    void resetSequences(String matchId) {
+        String oddsPrefix = matchId + ':';
+        sentSeq.keySet().removeIf(key -> key.equals(matchId) || key.startsWith(oddsPrefix));
+    }
+
+    private boolean execute(Runnable task) {
+        try {
+            writer.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("[WebSocket] 写线程池已关闭，放弃发送: {}", session.getId());
+            return false;
+        }
+    }
+
+    /**
+     * 关闭队列并丢弃未发送的帧
+     */
+    void close() {
+        synchronized (queue) {
+            closed = true;
+            statistics.onDiscarded(queue.size());
+            statistics.onConflationPending(-conflated.size());
+            queue.clear();
+            pendingByKey.clear();
+            conflated.clear();
+        }
+        sentSeq.clear();
+    }
+
+    /**
+     * 当前队列深度
+     * @return 待发送帧数
+     */
+    public int depth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    public WebSocketSession getSession() {
+        return session;
+    }
+}
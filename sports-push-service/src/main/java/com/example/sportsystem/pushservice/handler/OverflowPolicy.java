@@ -0,0 +1,20 @@
+package com.example.sportsystem.pushservice.handler;
+
+/**
+ * 会话发送队列溢出策略
+ */
+public enum OverflowPolicy {
+    /**
+     * 丢弃最早的待发送帧
+     */
+    DROP_OLDEST,
+    /**
+     * 同一合并键（如同一盘口）只保留最新的待发送帧，无可合并帧时丢弃最早的帧；
+     * 比分等不可合并帧不会被覆盖
+     */
+    CONFLATE,
+    /**
+     * 断开慢速客户端，由客户端重连后重新同步
+     */
+    DISCONNECT
+}
@@ -0,0 +1,23 @@
+package com.example.sportsystem.pushservice.handler;
+
+/**
+ * 会话发送失败处理
+ * 会话写入失败时发送队列暂停，失败的帧放回队首，由处理器决定退避后恢复发送还是放弃该会话
+ */
+public interface SendFailureHandler {
+
+    /**
+     * 会话写入失败
+     * @param sessionId 会话ID
+     * @param attempt 连续失败次数（从1开始）
+     * @param resume 退避结束后恢复发送的动作
+     * @return 是否已安排重试（返回 false 时发送队列关闭会话）
+     */
+    boolean onSendFailure(String sessionId, int attempt, Runnable resume);
+
+    /**
+     * 失败后重试发送成功
+     * @param sessionId 会话ID
+     */
+    void onSendRecovered(String sessionId);
+}
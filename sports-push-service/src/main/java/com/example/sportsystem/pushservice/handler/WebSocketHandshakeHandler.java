@@ -1,14 +1,21 @@
 package com.example.sportsystem.pushservice.handler;
 
+import com.example.sportsystem.common.model.MatchScoreMessage;
+import com.example.sportsystem.common.model.OddsUpdateMessage;
+import com.example.sportsystem.pushservice.codec.BinaryFrameCodec;
 import com.example.sportsystem.pushservice.config.OriginHandshakeInterceptor;
 import com.example.sportsystem.pushservice.handler.WebSocketSessionManager;
 import com.example.sportsystem.pushservice.service.ClientIdentityService;
+import com.example.sportsystem.pushservice.service.HandshakeAdmissionService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -18,15 +25,18 @@ import java.util.HashMap;
  */
 @Component
 @Slf4j
-public class WebSocketHandshakeHandler extends TextWebSocketHandler {
+public class WebSocketHandshakeHandler extends TextWebSocketHandler implements SubProtocolCapable {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final WebSocketSessionManager sessionManager;
     private final ClientIdentityService clientIdentityService;
+    private final HandshakeAdmissionService admissionService;
 
-    public WebSocketHandshakeHandler(WebSocketSessionManager sessionManager, ClientIdentityService clientIdentityService) {
+    public WebSocketHandshakeHandler(WebSocketSessionManager sessionManager, ClientIdentityService clientIdentityService,
+                                     HandshakeAdmissionService admissionService) {
         this.sessionManager = sessionManager;
         this.clientIdentityService = clientIdentityService;
+        this.admissionService = admissionService;
 
         // 初始化消息路由
         messageHandlers.put(MessageType.SUBSCRIBE, this::handleSubscribe);
@@ -35,6 +45,7 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
         messageHandlers.put(MessageType.MATCH_SCORE, this::handleMatchScore);
         messageHandlers.put(MessageType.ODDS_UPDATE, this::handleOddsUpdate);
         messageHandlers.put(MessageType.EVENT_ALERT, this::handleEventAlert);
+        messageHandlers.put(MessageType.RESYNC, this::handleResync);
     }
 
     /**
@@ -47,6 +58,7 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
         MATCH_SCORE("match_score"),
         ODDS_UPDATE("odds_update"),
         EVENT_ALERT("event_alert"),
+        RESYNC("resync"),
         UNKNOWN("unknown");
 
         private final String type;
@@ -81,20 +93,34 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
      */
     private void handleSubscribe(WebSocketSession session, String data) {
         if (data != null && !data.isEmpty()) {
-            sessionManager.subscribeMatch(session.getId(), data, session);
-            sendResponse(session, "subscribed", "Subscribed to " + data);
+            if (sessionManager.subscribeMatch(session.getId(), data, session)) {
+                clientIdentityService.setCurrentMatchId(session.getId(), data);
+                sendResponse(session, "subscribed", "Subscribed to " + data);
+            }
         }
     }
 
     /**
-     * 处理取消订阅消息
+     * 处理取消订阅消息（data 为空时取消全部订阅）
      */
     private void handleUnsubscribe(WebSocketSession session, String data) {
-        String currentTopic = (String) session.getAttributes().get("topic");
-        if (currentTopic != null) {
-            sessionManager.unsubscribeMatch(session.getId(), currentTopic);
-            session.getAttributes().remove("topic");
-            sendResponse(session, "unsubscribed", "Unsubscribed");
+        unsubscribe(session, data);
+        sendResponse(session, "unsubscribed", data != null && !data.isEmpty() ? "Unsubscribed from " + data : "Unsubscribed");
+    }
+
+    /**
+     * 取消指定赛事或全部赛事的订阅
+     * @param session WebSocket会话
+     * @param matchId 赛事ID（为空表示全部）
+     */
+    private void unsubscribe(WebSocketSession session, String matchId) {
+        if (matchId != null && !matchId.isEmpty()) {
+            sessionManager.unsubscribeMatch(session.getId(), matchId);
+        } else {
+            sessionManager.unsubscribeAll(session.getId());
+        }
+        if (sessionManager.getSubscriptions(session.getId()).isEmpty()) {
+            clientIdentityService.setCurrentMatchId(session.getId(), null);
         }
     }
 
@@ -127,15 +153,50 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
         log.info("[WebSocket] 收到赛事事件提醒请求: {}", data);
     }
 
+    /**
+     * 处理重新同步请求（增量协议下客户端发现序列号缺口时发送，data 为赛事ID）
+     */
+    private void handleResync(WebSocketSession session, String data) {
+        if (data != null && !data.isEmpty()) {
+            sessionManager.resync(session.getId(), data);
+        }
+    }
+
+    /**
+     * 解析客户端协商的推送格式：子协议 sports.binary.v1 或握手参数 format=binary 选择二进制格式，
+     * 握手参数 delta=true 选择 JSON 增量协议
+     * @param session WebSocket会话
+     * @return 推送格式
+     */
+    private WireFormat resolveWireFormat(WebSocketSession session) {
+        if (BinaryFrameCodec.SUBPROTOCOL.equals(session.getAcceptedProtocol())) {
+            return WireFormat.BINARY;
+        }
+        if (session.getUri() == null) {
+            return WireFormat.JSON;
+        }
+        Map<String, List<String>> params = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        if ("binary".equalsIgnoreCase(params.getOrDefault("format", List.of("")).get(0))) {
+            return WireFormat.BINARY;
+        }
+        String delta = params.getOrDefault("delta", List.of("")).get(0);
+        return "true".equalsIgnoreCase(delta) || "1".equals(delta) ? WireFormat.DELTA : WireFormat.JSON;
+    }
+
+    /**
+     * 支持的子协议（客户端请求时握手阶段协商）
+     * @return 子协议列表
+     */
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(BinaryFrameCodec.SUBPROTOCOL);
+    }
+
     /**
      * 发送结构化响应
      */
     private void sendResponse(WebSocketSession session, String type, String message) {
-        try {
-            session.sendMessage(new TextMessage(String.format("{\"type\":\"%s\",\"message\":\"%s\"}", type, message)));
-        } catch (IOException e) {
-            log.error("[WebSocket] 发送响应失败:", e);
-        }
+        sessionManager.sendToSession(session, String.format("{\"type\":\"%s\",\"message\":\"%s\"}", type, message));
     }
 
     /**
@@ -145,6 +206,18 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
      */
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        try {
+            registerSession(session);
+        } finally {
+            // 会话已计入会话管理器（或连接被拒绝），释放准入时预留的连接名额
+            Object reservationId = session.getAttributes().remove(OriginHandshakeInterceptor.KEY_RESERVATION);
+            if (reservationId != null) {
+                admissionService.release((Long) reservationId);
+            }
+        }
+    }
+
+    private void registerSession(WebSocketSession session) throws Exception {
         String user = (String) session.getAttributes().get(OriginHandshakeInterceptor.KEY_USER);
         if (user == null) {
             session.close(CloseStatus.POLICY_VIOLATION);
@@ -158,7 +231,7 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
 
         // 注册客户端身份
         ClientIdentityService.ClientInfo info = clientIdentityService.registerClient(session.getId(), remoteAddress, userAgent, token);
-        sessionManager.addSession(session, info.getClientId());
+        sessionManager.addSession(session, info.getClientId(), resolveWireFormat(session));
         log.info("[WebSocket] 新连接建立: {} from {}", session.getId(), remoteAddress);
     }
 
@@ -180,17 +253,17 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
             // 非 JSON 消息，使用原始方式处理
             if (payload.startsWith("subscribe:")) {
                 String topic = payload.substring("subscribe:".length()).trim();
-                if (!topic.isEmpty()) {
+                if (!topic.isEmpty() && sessionManager.subscribeMatch(session.getId(), topic, session)) {
                     clientIdentityService.setCurrentMatchId(session.getId(), topic);
-                    session.getAttributes().put("topic", topic);
-                    session.sendMessage(new TextMessage("{\"status\":\"success\",\"message\":\"Subscribed to " + topic + "\"}"));
+                    sessionManager.sendToSession(session, "{\"status\":\"success\",\"message\":\"Subscribed to " + topic + "\"}");
                 }
             } else if (payload.startsWith("unsubscribe")) {
-                session.getAttributes().remove("topic");
-                clientIdentityService.setCurrentMatchId(session.getId(), null);
-                session.sendMessage(new TextMessage("{\"status\":\"success\",\"message\":\"Unsubscribed\"}"));
+                // 兼容 "unsubscribe"（全部）与 "unsubscribe:<matchId>"（单场）
+                String topic = payload.startsWith("unsubscribe:") ? payload.substring("unsubscribe:".length()).trim() : null;
+                unsubscribe(session, topic);
+                sessionManager.sendToSession(session, "{\"status\":\"success\",\"message\":\"Unsubscribed\"}");
             } else {
-                session.sendMessage(new TextMessage("{\"status\":\"error\",\"message\":\"Unknown command\"}"));
+                sessionManager.sendToSession(session, "{\"status\":\"error\",\"message\":\"Unknown command\"}");
             }
         }
     }
@@ -206,34 +279,36 @@ public class WebSocketHandshakeHandler extends TextWebSocketHandler {
      * @param message 消息体
      */
     public void broadcast(String message) {
-        sessions.forEach((id, session) -> {
-            try {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(message));
-                }
-            } catch (IOException e) {
-                log.error("[WebSocket] 推送失败:", e);
-            }
-        });
+        sessionManager.broadcast(message);
     }
 
     /**
      * 向指定用户/主题推送消息
+     * 通过赛事订阅索引定位订阅者，耗时只与该赛事的订阅人数相关
      * @param topic 主题或用户ID
      * @param message 消息内容
      */
     public void sendMessageToTopic(String topic, String message) {
-        sessions.values().stream()
-                .filter(session -> topic.equals(session.getAttributes().get("topic")))
-                .forEach(session -> {
-                    try {
-                        if (session.isOpen()) {
-                            session.sendMessage(new TextMessage(message));
-                        }
-                    } catch (IOException e) {
-                        log.error("[WebSocket] 推送失败:", e);
-                    }
-                });
+        sessionManager.sendMessageToMatchSubscribers(topic, message);
+    }
+
+    /**
+     * 推送比分更新并刷新赛事快照
+     * @param score 比分消息
+     * @param message 消息内容
+     */
+    public void sendScoreToTopic(MatchScoreMessage score, String message) {
+        sessionManager.publishMatchScore(score, message);
+    }
+
+    /**
+     * 推送盘口更新并刷新赛事快照，落后的客户端只会收到每个盘口键的最新值
+     * @param odds 盘口消息
+     * @param oddsKey 盘口键（同时作为合并键）
+     * @param message 消息内容
+     */
+    public void sendOddsToTopic(OddsUpdateMessage odds, String oddsKey, String message) {
+        sessionManager.publishOdds(odds, oddsKey, message);
     }
 
     /**
@@ -1,16 +1,32 @@
 package com.example.sportsystem.pushservice.handler;
 
+import com.example.sportsystem.common.model.MatchScoreMessage;
+import com.example.sportsystem.common.model.OddsUpdateMessage;
+import com.example.sportsystem.pushservice.codec.BinaryFrameCodec;
+import com.example.sportsystem.pushservice.codec.DeltaCodec;
+import com.example.sportsystem.pushservice.service.ClientIdentityService;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * WebSocket 会话管理器
@@ -20,36 +36,159 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class WebSocketSessionManager {
 
-    // 全局连接池
-    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    // 全局连接池（每个会话对应一个有界发送队列）
+    private final Map<String, OutboundSessionQueue> sessions = new ConcurrentHashMap<>();
+
+    // 每个会话订阅的赛事集合
+    private final Map<String, MatchSubscriptions> sessionSubscriptions = new ConcurrentHashMap<>();
 
     // 按赛事ID订阅的用户
-    private final Map<String, Map<String, WebSocketSession>> matchSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, OutboundSessionQueue>> matchSubscribers = new ConcurrentHashMap<>();
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
-    public WebSocketSessionManager() {
-        // 每30秒执行一次心跳检测
-        scheduler.scheduleAtFixedRate(this::checkHeartbeat, 0, 30, TimeUnit.SECONDS);
+    // 会话写线程池（所有会话共享，每个会话同一时刻只占用一个线程）
+    private final ExecutorService writerPool;
+
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final OutboundQueueStatistics queueStatistics = new OutboundQueueStatistics();
+
+    // 是否启用盘口合并推送
+    private final boolean conflationEnabled;
+    // 存在待 flush 合并帧的会话队列
+    private final Set<OutboundSessionQueue> dirtyQueues = ConcurrentHashMap.newKeySet();
+
+    // 进行中赛事的最新状态快照，新订阅者订阅时立即下发
+    private final MatchSnapshotCache snapshotCache;
+
+    // 是否允许客户端启用增量协议
+    private final boolean deltaEnabled;
+
+    // 压缩效果采样
+    private final CompressionSampler compressionSampler;
+
+    // 会话写入失败时的退避重试
+    private final SendFailureHandler sendFailureHandler;
+
+    // 心跳帧内容固定，全局共享
+    private static final BroadcastFrame PING_FRAME = BroadcastFrame.of("{\"type\":\"ping\"}");
+
+    // 心跳时间轮：每个 tick 只处理一个槽位的会话
+    private final HeartbeatWheel heartbeatWheel;
+    private final ClientIdentityService clientIdentityService;
+    // 心跳周期，周期内有入站消息的会话跳过心跳
+    private final long heartbeatIntervalMs;
+    // 空闲超时（为 0 表示不因空闲断开）
+    private final long idleTimeoutMs;
+
+    public WebSocketSessionManager(@Value("${websocket.outbound.queue-capacity:256}") int queueCapacity,
+                                   @Value("${websocket.outbound.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy,
+                                   @Value("${websocket.outbound.writer-threads:8}") int writerThreads,
+                                   @Value("${websocket.odds.conflation-enabled:true}") boolean conflationEnabled,
+                                   @Value("${websocket.odds.conflation-interval-ms:200}") long conflationIntervalMs,
+                                   @Value("${websocket.delta.enabled:true}") boolean deltaEnabled,
+                                   @Value("${websocket.heartbeat.interval-ms:30000}") long heartbeatIntervalMs,
+                                   @Value("${websocket.heartbeat.tick-ms:100}") long heartbeatTickMs,
+                                   @Value("${websocket.heartbeat.idle-timeout-ms:0}") long idleTimeoutMs,
+                                   MatchSnapshotCache snapshotCache,
+                                   CompressionSampler compressionSampler,
+                                   ClientIdentityService clientIdentityService,
+                                   SendFailureHandler sendFailureHandler) {
+        this.sendFailureHandler = sendFailureHandler;
+        this.snapshotCache = snapshotCache;
+        this.clientIdentityService = clientIdentityService;
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.heartbeatWheel = new HeartbeatWheel((int) (heartbeatIntervalMs / heartbeatTickMs));
+        this.compressionSampler = compressionSampler;
+        this.deltaEnabled = deltaEnabled;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.conflationEnabled = conflationEnabled;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.writerPool = Executors.newFixedThreadPool(writerThreads,
+                r -> new Thread(r, "ws-writer-" + threadIndex.incrementAndGet()));
+        // 心跳时间轮按 tick 前进，每个会话每个心跳周期检测一次
+        scheduler.scheduleAtFixedRate(this::heartbeatTick, heartbeatTickMs, heartbeatTickMs, TimeUnit.MILLISECONDS);
+        if (conflationEnabled) {
+            scheduler.scheduleAtFixedRate(this::flushConflated, conflationIntervalMs, conflationIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
-     * 心跳检测任务
+     * 按固定节拍将各会话暂存的合并帧移入发送队列
      */
-    private void checkHeartbeat() {
-        sessions.forEach((id, session) -> {
-            try {
-                if (session.isOpen()) {
-                    // 发送心跳消息（可选）
-                    session.sendMessage(new TextMessage("{\"type\":\"ping\"}"));
-                } else {
-                    removeSession(id);
-                }
-            } catch (IOException e) {
-                log.warn("[WebSocket] 心跳检测失败: {}", id);
-                removeSession(id);
+    private void flushConflated() {
+        try {
+            Iterator<OutboundSessionQueue> iterator = dirtyQueues.iterator();
+            while (iterator.hasNext()) {
+                OutboundSessionQueue queue = iterator.next();
+                // 先移出集合再 flush，flush 之后新暂存的帧会重新登记
+                iterator.remove();
+                queue.flushConflated();
             }
-        });
+        } catch (Exception e) {
+            log.error("[WebSocket] 合并帧推送失败:", e);
+        }
+    }
+
+    /**
+     * 心跳时间轮前进一格（心跳帧与推送帧走同一发送队列，不阻塞调度线程）
+     */
+    private void heartbeatTick() {
+        try {
+            heartbeatWheel.tick(this::checkHeartbeat);
+        } catch (Exception e) {
+            log.error("[WebSocket] 心跳检测失败:", e);
+        }
+    }
+
+    /**
+     * 检测单个会话：清理已关闭的会话，近期活跃的会话跳过心跳，空闲超时的会话断开
+     * @param queue 会话发送队列
+     */
+    private void checkHeartbeat(OutboundSessionQueue queue) {
+        WebSocketSession session = queue.getSession();
+        String id = session.getId();
+        if (!session.isOpen()) {
+            heartbeatWheel.sessionsReaped.increment();
+            removeSession(id);
+            return;
+        }
+        long idleMillis = clientIdentityService.getIdleMillis(id);
+        if (idleMillis >= 0 && idleMillis < heartbeatIntervalMs) {
+            heartbeatWheel.pingsSkipped.increment();
+            return;
+        }
+        if (idleMillis >= 0 && idleTimeoutMs > 0 && idleMillis >= idleTimeoutMs) {
+            log.warn("[WebSocket] 会话空闲超时，断开连接: {}", id);
+            heartbeatWheel.idleClosed.increment();
+            removeSession(id);
+            closeQuietly(session, CloseStatus.SESSION_NOT_RELIABLE);
+            return;
+        }
+        if (queue.offer(null, PING_FRAME)) {
+            heartbeatWheel.pingsSent.increment();
+        } else {
+            log.warn("[WebSocket] 心跳检测失败: {}", id);
+            heartbeatWheel.sessionsReaped.increment();
+            removeSession(id);
+        }
+    }
+
+    private void closeQuietly(WebSocketSession session, CloseStatus status) {
+        try {
+            writerPool.execute(() -> {
+                try {
+                    session.close(status);
+                } catch (IOException e) {
+                    log.warn("[WebSocket] 关闭会话失败: {}", session.getId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("[WebSocket] 写线程池已关闭，放弃关闭会话: {}", session.getId());
+        }
     }
 
     /**
@@ -58,8 +197,23 @@ public class WebSocketSessionManager {
      * @param user 用户标识
      */
     public void addSession(WebSocketSession session, String user) {
-        sessions.put(session.getId(), session);
-        log.info("[WebSocket] 新增连接: {}", session.getId());
+        addSession(session, user, WireFormat.JSON);
+    }
+
+    /**
+     * 添加新连接
+     * @param session WebSocket会话
+     * @param user 用户标识
+     * @param wireFormat 客户端协商的推送格式（服务端未启用增量协议时退化为 JSON）
+     */
+    public void addSession(WebSocketSession session, String user, WireFormat wireFormat) {
+        WireFormat format = wireFormat == WireFormat.DELTA && !deltaEnabled ? WireFormat.JSON : wireFormat;
+        OutboundSessionQueue queue = new OutboundSessionQueue(session, queueCapacity, overflowPolicy, writerPool,
+                queueStatistics, sendFailureHandler, format, compressionSampler);
+        sessions.put(session.getId(), queue);
+        heartbeatWheel.add(queue);
+        sessionSubscriptions.put(session.getId(), MatchSubscriptions.EMPTY);
+        log.info("[WebSocket] 新增连接: {} ({})", session.getId(), format);
     }
 
     /**
@@ -67,26 +221,67 @@ public class WebSocketSessionManager {
      * @param sessionId 会话ID
      */
     public void removeSession(String sessionId) {
-        WebSocketSession session = sessions.remove(sessionId);
-        if (session != null && session.getAttributes().containsKey("topic")) {
-            String topic = (String) session.getAttributes().get("topic");
-            matchSubscribers.computeIfPresent(topic, (k, v) -> {
-                v.remove(sessionId);
-                return v;
-            });
+        OutboundSessionQueue queue = sessions.remove(sessionId);
+        if (queue != null) {
+            queue.close();
+            dirtyQueues.remove(queue);
+            heartbeatWheel.remove(queue);
+        }
+        MatchSubscriptions subscriptions = sessionSubscriptions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach(matchId -> removeSubscriber(matchId, sessionId));
         }
         log.info("[WebSocket] 连接关闭: {}", sessionId);
     }
 
     /**
-     * 订阅特定赛事
+     * 订阅特定赛事（一个会话可同时订阅多场赛事），新订阅时立即下发该赛事的最新快照
      * @param sessionId 会话ID
      * @param matchId 赛事ID
      * @param session WebSocket会话
+     * @return 是否订阅成功（会话已关闭时返回 false）
+     */
+    public boolean subscribeMatch(String sessionId, String matchId, WebSocketSession session) {
+        OutboundSessionQueue queue = sessions.get(sessionId);
+        if (queue == null) {
+            return false;
+        }
+        // 与快照更新持有同一把锁：快照入队前不会有更新的帧先到达该会话
+        synchronized (snapshotCache.lockFor(matchId)) {
+            boolean[] added = new boolean[1];
+            // 在会话订阅集合的 compute 内更新赛事索引，避免与 removeSession 竞争留下脏索引
+            boolean subscribed = sessionSubscriptions.computeIfPresent(sessionId, (k, v) -> {
+                if (!v.contains(matchId)) {
+                    matchSubscribers.compute(matchId, (m, subscribers) -> {
+                        Map<String, OutboundSessionQueue> result = subscribers != null ? subscribers : new ConcurrentHashMap<>();
+                        result.put(sessionId, queue);
+                        return result;
+                    });
+                    added[0] = true;
+                }
+                return v.with(matchId);
+            }) != null;
+            if (added[0]) {
+                snapshotCache.forEachFrame(matchId, queue::offer);
+            }
+            return subscribed;
+        }
+    }
+
+    /**
+     * 重新同步：清除会话在该赛事上的增量状态并重发最新快照（客户端检测到序列号缺口时请求）
+     * @param sessionId 会话ID
+     * @param matchId 赛事ID
      */
-    public void subscribeMatch(String sessionId, String matchId, WebSocketSession session) {
-        matchSubscribers.computeIfAbsent(matchId, k -> new ConcurrentHashMap<>()).put(sessionId, session);
-        session.getAttributes().put("topic", matchId);
+    public void resync(String sessionId, String matchId) {
+        OutboundSessionQueue queue = sessions.get(sessionId);
+        if (queue == null || !getSubscriptions(sessionId).contains(matchId)) {
+            return;
+        }
+        synchronized (snapshotCache.lockFor(matchId)) {
+            queue.resetSequences(matchId);
+            snapshotCache.forEachFrame(matchId, queue::offer);
+        }
     }
 
     /**
@@ -95,32 +290,213 @@ public class WebSocketSessionManager {
      * @param matchId 赛事ID
      */
     public void unsubscribeMatch(String sessionId, String matchId) {
+        sessionSubscriptions.computeIfPresent(sessionId, (k, v) -> {
+            if (v.contains(matchId)) {
+                removeSubscriber(matchId, sessionId);
+            }
+            return v.without(matchId);
+        });
+    }
+
+    /**
+     * 取消会话的全部订阅
+     * @param sessionId 会话ID
+     */
+    public void unsubscribeAll(String sessionId) {
+        sessionSubscriptions.computeIfPresent(sessionId, (k, v) -> {
+            v.forEach(matchId -> removeSubscriber(matchId, sessionId));
+            return MatchSubscriptions.EMPTY;
+        });
+    }
+
+    /**
+     * 获取会话当前订阅的赛事
+     * @param sessionId 会话ID
+     * @return 订阅集合
+     */
+    public MatchSubscriptions getSubscriptions(String sessionId) {
+        return sessionSubscriptions.getOrDefault(sessionId, MatchSubscriptions.EMPTY);
+    }
+
+    /**
+     * 从赛事订阅索引中移除会话，订阅者为空时同时移除该赛事
+     * @param matchId 赛事ID
+     * @param sessionId 会话ID
+     */
+    private void removeSubscriber(String matchId, String sessionId) {
         matchSubscribers.computeIfPresent(matchId, (k, v) -> {
             v.remove(sessionId);
-            return v;
+            return v.isEmpty() ? null : v;
         });
     }
 
     /**
-     * 向指定赛事的所有订阅者推送消息
+     * 本节点是否有会话订阅了指定赛事
+     * @param matchId 赛事ID
+     * @return 是否存在订阅者
+     */
+    public boolean hasSubscribers(String matchId) {
+        return matchSubscribers.containsKey(matchId);
+    }
+
+    /**
+     * 向指定赛事的所有订阅者推送消息（无本地订阅者时不做编码）
      * @param matchId 赛事ID
      * @param message 消息内容
      */
     public void sendMessageToMatchSubscribers(String matchId, String message) {
-        Map<String, WebSocketSession> subscribers = matchSubscribers.get(matchId);
+        if (hasSubscribers(matchId)) {
+            sendFrameToMatchSubscribers(matchId, BroadcastFrame.of(message));
+        }
+    }
+
+    /**
+     * 向指定赛事的所有订阅者推送共享帧（不可合并，如比分帧）
+     * @param matchId 赛事ID
+     * @param frame 推送帧（所有订阅者共享）
+     */
+    public void sendFrameToMatchSubscribers(String matchId, BroadcastFrame frame) {
+        Map<String, OutboundSessionQueue> subscribers = matchSubscribers.get(matchId);
         if (subscribers != null && !subscribers.isEmpty()) {
-            subscribers.forEach((id, session) -> {
-                try {
-                    if (session.isOpen()) {
-                        session.sendMessage(new TextMessage(message));
-                    }
-                } catch (IOException e) {
-                    log.error("[WebSocket] 推送失败:", e);
-                }
-            });
+            subscribers.forEach((id, queue) -> queue.offer(null, frame));
+        }
+    }
+
+    /**
+     * 向指定赛事的所有订阅者推送可合并帧（如盘口）
+     * 订阅者暂存每个合并键的最新值，按配置的节拍统一发送；比分帧不得走此方法
+     * @param matchId 赛事ID
+     * @param conflationKey 合并键
+     * @param frame 推送帧（所有订阅者共享）
+     */
+    public void sendConflatedFrameToMatchSubscribers(String matchId, String conflationKey, BroadcastFrame frame) {
+        Map<String, OutboundSessionQueue> subscribers = matchSubscribers.get(matchId);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+        if (!conflationEnabled) {
+            subscribers.forEach((id, queue) -> queue.offer(conflationKey, frame));
+            return;
+        }
+        subscribers.forEach((id, queue) -> {
+            if (queue.conflate(conflationKey, frame)) {
+                dirtyQueues.add(queue);
+            }
+        });
+    }
+
+    /**
+     * 更新赛事比分快照并推送给订阅者（比分帧不可合并）
+     * 版本不高于快照的比分（乱序、重投或死信重放的旧消息）直接丢弃，不推送也不覆盖快照
+     * @param score 比分消息（已结束时淘汰快照）
+     * @param message 消息内容
+     * @return 是否已推送
+     */
+    public boolean publishMatchScore(MatchScoreMessage score, String message) {
+        String matchId = score.getMatchId();
+        long version = score.version();
+        synchronized (snapshotCache.lockFor(matchId)) {
+            if (version <= snapshotCache.getScoreVersion(matchId)) {
+                log.debug("[WebSocket] 丢弃过期比分: {} (version={})", matchId, version);
+                return false;
+            }
+            BroadcastFrame frame = deltaEnabled
+                    ? BroadcastFrame.versioned(DeltaCodec.KIND_SCORE, matchId, message, snapshotCache.getScore(matchId),
+                            () -> BinaryFrameCodec.encode(score))
+                    : BroadcastFrame.of(message, () -> BinaryFrameCodec.encode(score));
+            snapshotCache.updateScore(matchId, score.getStatus(), version, frame);
+            sendFrameToMatchSubscribers(matchId, frame);
+            return true;
+        }
+    }
+
+    /**
+     * 更新赛事盘口快照并以合并方式推送给订阅者
+     * 时间戳早于快照中同一盘口键的盘口（乱序或死信重放的旧消息）以及已结束赛事的盘口直接丢弃，不推送也不覆盖快照
+     * @param odds 盘口消息
+     * @param oddsKey 盘口键（同时作为合并键）
+     * @param message 消息内容
+     * @return 是否已推送
+     */
+    public boolean publishOdds(OddsUpdateMessage odds, String oddsKey, String message) {
+        String matchId = odds.getMatchId();
+        synchronized (snapshotCache.lockFor(matchId)) {
+            if (snapshotCache.isFinished(matchId) || odds.getTimestamp() < snapshotCache.getOddsTimestamp(matchId, oddsKey)) {
+                log.debug("[WebSocket] 丢弃过期盘口: {} (timestamp={})", oddsKey, odds.getTimestamp());
+                return false;
+            }
+            BroadcastFrame frame = deltaEnabled
+                    ? BroadcastFrame.versioned(DeltaCodec.KIND_ODDS, oddsKey, message, snapshotCache.getOdds(matchId, oddsKey),
+                            () -> BinaryFrameCodec.encode(odds))
+                    : BroadcastFrame.of(message, () -> BinaryFrameCodec.encode(odds));
+            snapshotCache.updateOdds(matchId, oddsKey, odds.getTimestamp(), frame);
+            sendConflatedFrameToMatchSubscribers(matchId, oddsKey, frame);
+            return true;
+        }
+    }
+
+    /**
+     * 向所有在线连接推送消息
+     * @param message 消息内容
+     */
+    public void broadcast(String message) {
+        BroadcastFrame frame = BroadcastFrame.of(message);
+        sessions.forEach((id, queue) -> queue.offer(null, frame));
+    }
+
+    /**
+     * 向单个会话发送消息（如订阅应答），与推送帧共用发送队列以避免并发写入
+     * @param session WebSocket会话
+     * @param message 消息内容
+     */
+    public void sendToSession(WebSocketSession session, String message) {
+        OutboundSessionQueue queue = sessions.get(session.getId());
+        if (queue != null) {
+            queue.offer(null, BroadcastFrame.of(message));
+            return;
+        }
+        // 尚未注册的会话（如握手后立即关闭）直接发送
+        try {
+            if (session.isOpen()) {
+                session.sendMessage(new TextMessage(message));
+            }
+        } catch (IOException e) {
+            log.error("[WebSocket] 发送响应失败:", e);
+        }
+    }
+
+    /**
+     * 按会话ID向单个会话发送控制消息（如迁移通知）
+     * @param sessionId 会话ID
+     * @param message 消息内容
+     * @return 是否入队成功
+     */
+    public boolean sendToSession(String sessionId, String message) {
+        OutboundSessionQueue queue = sessions.get(sessionId);
+        return queue != null && queue.offer(null, BroadcastFrame.of(message));
+    }
+
+    /**
+     * 移除并关闭会话（在写线程上关闭，不阻塞调用方）
+     * @param sessionId 会话ID
+     * @param status 关闭状态
+     */
+    public void closeSession(String sessionId, CloseStatus status) {
+        OutboundSessionQueue queue = sessions.get(sessionId);
+        if (queue != null) {
+            removeSession(sessionId);
+            closeQuietly(queue.getSession(), status);
         }
     }
 
+    /**
+     * 获取当前全部会话ID的快照
+     * @return 会话ID列表
+     */
+    public List<String> getSessionIds() {
+        return new ArrayList<>(sessions.keySet());
+    }
+
     /**
      * 获取当前连接总数
      * @return 连接数
@@ -149,4 +525,37 @@ public class WebSocketSessionManager {
                 stats.put(matchId, subscribers.size()));
         return stats;
     }
+
+    /**
+     * 获取发送队列统计（当前排队、丢弃、合并与断开次数等）
+     * @return 统计数据
+     */
+    public Map<String, Object> getOutboundQueueStats() {
+        Map<String, Object> stats = queueStatistics.toMap();
+        int maxDepth = 0;
+        for (OutboundSessionQueue queue : sessions.values()) {
+            maxDepth = Math.max(maxDepth, queue.depth());
+        }
+        stats.put("max_queue_depth", maxDepth);
+        stats.put("queue_capacity", queueCapacity);
+        stats.put("overflow_policy", overflowPolicy.name());
+        return stats;
+    }
+
+    /**
+     * 获取心跳统计（发送、跳过、清理与空闲断开次数）
+     * @return 统计数据
+     */
+    public Map<String, Object> getHeartbeatStats() {
+        Map<String, Object> stats = heartbeatWheel.toMap();
+        stats.put("interval_ms", heartbeatIntervalMs);
+        stats.put("idle_timeout_ms", idleTimeoutMs);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        writerPool.shutdown();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.example.sportsystem.pushservice.handler;
+
+/**
+ * 会话推送格式（握手时协商）
+ */
+public enum WireFormat {
+    // 原始 JSON 文本（默认）
+    JSON,
+    // JSON 增量协议：首帧全量，后续仅发送变化字段
+    DELTA,
+    // 二进制固定布局（比分、盘口帧），其他帧仍为 JSON 文本
+    BINARY
+}
@@ -1,75 +1,193 @@
 package com.example.sportsystem.pushservice.job;
 
-import com.example.sportsystem.pushservice.handler.WebSocketHandshakeHandler;
+import com.example.sportsystem.common.model.MatchScoreMessage;
+import com.example.sportsystem.common.model.OddsUpdateMessage;
+import com.example.sportsystem.pushservice.config.StreamConsumerGroups;
+import com.example.sportsystem.pushservice.handler.ConflationKeys;
+import com.example.sportsystem.pushservice.handler.MatchSnapshotCache;
+import com.example.sportsystem.pushservice.service.ClusterBroadcastChannel;
+import com.example.sportsystem.pushservice.service.DeadLetterQueueService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Redis 死信队列（DLQ）清理任务
+ * 通过消费者组分批领取死信条目，重新发布到集群范围的来源：比分、盘口条目写回来源 Stream，
+ * 其他条目发布到集群广播通道，使每个节点上的订阅者都能收到（领取条目的节点不直接推送本地会话）。
+ * 发布成功后才以管道方式 XACK + XDEL，发布失败的条目留在待确认列表中下次重试；
+ * 版本低于当前快照的比分条目、时间戳早于当前快照的盘口条目直接丢弃。每次执行处理的条目数有上限，不会阻塞 Redis。
+ * 写回来源 Stream 的条目获得新的记录ID，会在赛事历史索引（MatchStreamIndex）中再出现一次：
+ * 回放历史的客户端可能收到同一条比分或盘口两次，需按比分版本、盘口时间戳去重
  */
 @Component
 @Slf4j
 public class RedisDlqCleanerJob {
 
     private final StringRedisTemplate redisTemplate;
-    private final WebSocketHandshakeHandler webSocketHandler;
+    private final DeadLetterQueueService deadLetterQueueService;
+    private final StreamConsumerGroups consumerGroups;
+    private final ClusterBroadcastChannel broadcastChannel;
+    private final MatchSnapshotCache snapshotCache;
+    private final ObjectMapper objectMapper;
 
-    public RedisDlqCleanerJob(StringRedisTemplate redisTemplate, WebSocketHandshakeHandler webSocketHandler) {
+    @Value("${websocket.redis.stream.match-stream}")
+    private String matchStreamKey;
+
+    @Value("${websocket.redis.stream.odds-stream}")
+    private String oddsStreamKey;
+
+    // 每批领取的条目数
+    @Value("${websocket.dlq.batch-size:200}")
+    private int batchSize;
+
+    // 每次执行最多处理的批次数
+    @Value("${websocket.dlq.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    // 死信 Stream 最大保留条数（近似裁剪）
+    @Value("${websocket.dlq.max-length:100000}")
+    private long maxLength;
+
+    public RedisDlqCleanerJob(StringRedisTemplate redisTemplate, DeadLetterQueueService deadLetterQueueService,
+                              StreamConsumerGroups consumerGroups, ClusterBroadcastChannel broadcastChannel,
+                              MatchSnapshotCache snapshotCache, ObjectMapper objectMapper) {
         this.redisTemplate = redisTemplate;
-        this.webSocketHandler = webSocketHandler;
+        this.deadLetterQueueService = deadLetterQueueService;
+        this.consumerGroups = consumerGroups;
+        this.broadcastChannel = broadcastChannel;
+        this.snapshotCache = snapshotCache;
+        this.objectMapper = objectMapper;
     }
 
     /**
      * 每隔5分钟扫描一次 DLQ 并尝试重新消费
      */
-    @Scheduled(fixedRate = 300000) // 5分钟
+    @Scheduled(fixedDelayString = "${websocket.dlq.drain-interval-ms:300000}") // 默认5分钟
     public void cleanDeadLetterQueue() {
-        Set<String> dlqKeys = redisTemplate.getConnectionFactory().getConnection()
-                .keys("dlq_*".getBytes());
+        String streamKey = deadLetterQueueService.getStreamKey();
+        try {
+            // 先重试本节点此前领取但未确认的条目，再领取新条目
+            int redelivered = drainBatch(ReadOffset.from("0"));
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                int count = drainBatch(ReadOffset.lastConsumed());
+                redelivered += count;
+                if (count < batchSize) {
+                    break;
+                }
+            }
+            redisTemplate.opsForStream().trim(streamKey, maxLength, true);
+            if (redelivered > 0) {
+                log.info("[Redis DLQ] 本次处理 {} 条死信: {}", redelivered, streamKey);
+            }
+        } catch (Exception e) {
+            log.error("[Redis DLQ] 清理失败:", e);
+        }
+    }
 
-        if (dlqKeys == null || dlqKeys.isEmpty()) {
-            return;
+    /**
+     * 领取并处理一批死信条目
+     * @param offset 读取位置（0 表示本消费者未确认的条目，> 表示新条目）
+     * @return 本批读取的条目数
+     */
+    private int drainBatch(ReadOffset offset) {
+        String streamKey = deadLetterQueueService.getStreamKey();
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream().read(
+                Consumer.from(deadLetterQueueService.getConsumerGroup(), consumerGroups.getNodeId()),
+                StreamReadOptions.empty().count(batchSize),
+                StreamOffset.create(streamKey, offset));
+        if (records == null || records.isEmpty()) {
+            return 0;
         }
 
-        for (String key : dlqKeys) {
+        List<RecordId> completed = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            Object matchId = record.getValue().get(DeadLetterQueueService.FIELD_MATCH_ID);
+            Object message = record.getValue().get(DeadLetterQueueService.FIELD_MESSAGE);
+            Object sourceStream = record.getValue().get(DeadLetterQueueService.FIELD_SOURCE_STREAM);
             try {
-                Set<ZSetOperations.TypedTuple<String>> messages = redisTemplate.opsForZSet().rangeWithScores(key, 0, -1);
-
-                if (messages != null && !messages.isEmpty()) {
-                    for (ZSetOperations.TypedTuple<String> tuple : messages) {
-                        String message = tuple.getValue();
-                        String matchId = extractMatchIdFromMessage(message);
-
-                        // 尝试重新推送
-                        webSocketHandler.sendMessageToTopic(matchId, message);
-
-                        // 推送成功后移除该消息
-                        redisTemplate.opsForZSet().remove(key, message);
-                        log.info("[Redis DLQ] 消息已重新推送并从队列中移除: {}@{}", key, message);
-                    }
+                if (matchId == null || message == null || "unknown".equals(matchId)) {
+                    log.warn("[Redis DLQ] 无法识别赛事的死信条目已丢弃: {}", record.getId());
+                } else {
+                    republish(record.getId(), matchId.toString(), message.toString(),
+                            sourceStream != null ? sourceStream.toString() : null);
                 }
+                completed.add(record.getId());
+            } catch (DataAccessException e) {
+                // 发布失败，保留在待确认列表中，下次执行时重试
+                log.warn("[Redis DLQ] 重新发布失败: {} - {}", record.getId(), e.getMessage());
+            }
+        }
+
+        // 发布成功（或确认无需重放）后确认并删除，两条命令在同一管道中发送
+        if (!completed.isEmpty()) {
+            byte[] key = streamKey.getBytes(StandardCharsets.UTF_8);
+            RecordId[] ids = completed.toArray(new RecordId[0]);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.streamCommands().xAck(key, deadLetterQueueService.getConsumerGroup(), ids);
+                connection.streamCommands().xDel(key, ids);
+                return null;
+            });
+        }
+        return records.size();
+    }
 
-            } catch (Exception e) {
-                log.error("[Redis DLQ] 清理失败:", e);
+    /**
+     * 重新发布死信条目到集群范围的来源
+     * @throws DataAccessException 发布失败
+     */
+    private void republish(RecordId id, String matchId, String message, String sourceStream) {
+        if (matchStreamKey.equals(sourceStream) || oddsStreamKey.equals(sourceStream)) {
+            if (!isReplayable(id, matchId, message, sourceStream)) {
+                return;
             }
+            // 写回来源 Stream，由各节点的消费者组重新消费（比分再经快照版本过滤）
+            redisTemplate.opsForStream().add(StreamRecords.newRecord().in(sourceStream).ofObject(message));
+        } else {
+            broadcastChannel.publish(matchId, message);
         }
     }
 
     /**
-     * 从消息中提取 match_id（示例逻辑）
-     * @param message 消息内容
-     * @return 赛事ID
+     * 检查 Stream 条目是否值得重放：无法解析的消息重放后仍会失败，版本低于当前快照的比分、
+     * 时间戳早于当前快照的盘口已过期（各节点推送时仍会再按各自的快照过滤一次）
      */
-    private String extractMatchIdFromMessage(String message) {
-        // 示例解析逻辑（实际应使用 JSON 解析）
-        if (message.contains("match_id")) {
-            return "1001"; // 实际应从消息中提取真实 ID
+    private boolean isReplayable(RecordId id, String matchId, String message, String sourceStream) {
+        try {
+            if (matchStreamKey.equals(sourceStream)) {
+                MatchScoreMessage score = objectMapper.readValue(message, MatchScoreMessage.class);
+                if (score.version() < snapshotCache.getScoreVersion(matchId)) {
+                    log.debug("[Redis DLQ] 过期的比分条目已丢弃: {} (version={})", id, score.version());
+                    return false;
+                }
+            } else {
+                OddsUpdateMessage odds = objectMapper.readValue(message, OddsUpdateMessage.class);
+                if (odds.getTimestamp() < snapshotCache.getOddsTimestamp(matchId, ConflationKeys.odds(odds))) {
+                    log.debug("[Redis DLQ] 过期的盘口条目已丢弃: {} (timestamp={})", id, odds.getTimestamp());
+                    return false;
+                }
+            }
+            return true;
+        } catch (JsonProcessingException e) {
+            log.warn("[Redis DLQ] 无法解析的死信条目已丢弃: {}", id);
+            return false;
         }
-        return "default";
     }
-}
\ No newline at end of file
+}
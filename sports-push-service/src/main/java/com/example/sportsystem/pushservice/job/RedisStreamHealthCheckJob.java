@@ -1,5 +1,6 @@
 package com.example.sportsystem.pushservice.job;
 
+import com.example.sportsystem.pushservice.config.StreamConsumerGroups;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.connection.stream.Consumer;
 import org.springframework.data.redis.connection.stream.StreamInfo;
@@ -7,8 +8,6 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 /**
  * Redis Stream 消费者组健康检查任务
  */
@@ -17,9 +16,11 @@ import java.util.List;
 public class RedisStreamHealthCheckJob {
 
     private final StringRedisTemplate redisTemplate;
+    private final StreamConsumerGroups consumerGroups;
 
-    public RedisStreamHealthCheckJob(StringRedisTemplate redisTemplate) {
+    public RedisStreamHealthCheckJob(StringRedisTemplate redisTemplate, StreamConsumerGroups consumerGroups) {
         this.redisTemplate = redisTemplate;
+        this.consumerGroups = consumerGroups;
     }
 
     /**
@@ -27,13 +28,11 @@ public class RedisStreamHealthCheckJob {
      */
     @Scheduled(fixedRate = 600000) // 10分钟
     public void checkStreamConsumerGroups() {
-        List<String> streams = List.of("match_stream", "odds_stream");
-
-        for (String streamKey : streams) {
+        for (String streamKey : consumerGroups.getStreamKeys()) {
             try {
                 StreamInfo.XInfoConsumers consumersInfo = redisTemplate.getConnectionFactory().getConnection()
                         .streamCommands()
-                        .xInfoConsumers(streamKey.getBytes(), "sports-push-consumer-group".getBytes());
+                        .xInfoConsumers(streamKey.getBytes(), consumerGroups.getConsumerGroup());
 
                 if (consumersInfo != null && !consumersInfo.isEmpty()) {
                     for (Consumer consumer : consumersInfo.getConsumers()) {
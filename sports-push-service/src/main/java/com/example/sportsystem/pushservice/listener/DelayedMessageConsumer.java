@@ -1,69 +1,237 @@
 package com.example.sportsystem.pushservice.listener;
 
-import com.example.sportsystem.pushservice.handler.WebSocketHandshakeHandler;
+import com.example.sportsystem.pushservice.service.ClusterBroadcastChannel;
+import com.example.sportsystem.pushservice.service.MatchIdExtractor;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 延迟消息消费者
  * 用于在未来某个时间点推送消息
+ * <p>
+ * 两级调度：远期消息保存在 Redis ZSET（delayed_messages）中，
+ * 每个轮询周期通过 Lua 脚本原子地领取即将到期（lookahead 窗口内）的一批消息并移入已领取集合（按领取时间排序，
+ * 停机后积压的过期消息不会在领取后立即被其他实例判定为超时而重复推送），
+ * 再挂到本地时间轮上按到期时间精确触发。多实例同时轮询时每条消息只会被一个实例领取，
+ * 到期后发布到集群广播通道，由每个节点推送给各自的订阅者（广播模式下其他节点的会话同样能收到）。
  */
 @Component
 @Slf4j
 public class DelayedMessageConsumer {
 
+    // 原子领取：取出到期时间不晚于 ARGV[1] 的前 ARGV[2] 条消息，移入已领取集合（以领取时间 ARGV[3] 为分数），
+    // 原到期时间保存在 KEYS[3] 哈希中供归还时恢复
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local items = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, ARGV[2]) " +
+            "for i = 1, #items, 2 do " +
+            "  redis.call('ZREM', KEYS[1], items[i]) " +
+            "  redis.call('ZADD', KEYS[2], ARGV[3], items[i]) " +
+            "  redis.call('HSET', KEYS[3], items[i], items[i + 1]) " +
+            "end " +
+            "return items", List.class);
+
+    // 归还：将领取时间早于 ARGV[1] 的消息（领取实例已失效）按原到期时间放回延迟队列
+    private static final RedisScript<Long> RECOVER_SCRIPT = new DefaultRedisScript<>(
+            "local items = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, ARGV[2]) " +
+            "for i = 1, #items, 2 do " +
+            "  local deliverAt = redis.call('HGET', KEYS[3], items[i]) or items[i + 1] " +
+            "  redis.call('ZREM', KEYS[2], items[i]) " +
+            "  redis.call('HDEL', KEYS[3], items[i]) " +
+            "  redis.call('ZADD', KEYS[1], deliverAt, items[i]) " +
+            "end " +
+            "return #items / 2", Long.class);
+
+    // 放回：本实例无法触发的消息按原到期时间 ARGV[2] 放回延迟队列
+    private static final RedisScript<Long> REQUEUE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('ZREM', KEYS[2], ARGV[1]) " +
+            "redis.call('HDEL', KEYS[3], ARGV[1]) " +
+            "return redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])", Long.class);
+
+    // 完成：从已领取集合与到期时间哈希中移除
+    private static final RedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HDEL', KEYS[2], ARGV[1]) " +
+            "return redis.call('ZREM', KEYS[1], ARGV[1])", Long.class);
+
+    private static final String DELAYED_KEY = "delayed_messages";
+    private static final String CLAIMED_KEY = "delayed_messages:claimed";
+    private static final String DELIVER_AT_KEY = "delayed_messages:deliver_at";
+    private static final List<String> KEYS = List.of(DELAYED_KEY, CLAIMED_KEY, DELIVER_AT_KEY);
+
     private final StringRedisTemplate redisTemplate;
-    private final WebSocketHandshakeHandler webSocketHandler;
+    private final ClusterBroadcastChannel broadcastChannel;
+    private final MatchIdExtractor matchIdExtractor;
+    private final DeliveryRetryScheduler retryScheduler;
 
-    public DelayedMessageConsumer(StringRedisTemplate redisTemplate, WebSocketHandshakeHandler webSocketHandler) {
+    // 本地时间轮：20ms 一格，负责 lookahead 窗口内消息的精确触发
+    private final HashedWheelTimer timer;
+    private final AtomicInteger scheduledCount = new AtomicInteger();
+
+    // 预取窗口：提前领取该时间内到期的消息
+    @Value("${websocket.delayed.lookahead-ms:1000}")
+    private long lookaheadMs;
+
+    // 单次领取的最大条数
+    @Value("${websocket.delayed.claim-batch-size:500}")
+    private int claimBatchSize;
+
+    // 领取后超过该时间仍未处理完的消息视为领取实例失效，归还延迟队列（需大于 lookahead 窗口）
+    @Value("${websocket.delayed.claim-timeout-ms:60000}")
+    private long claimTimeoutMs;
+
+    public DelayedMessageConsumer(StringRedisTemplate redisTemplate, ClusterBroadcastChannel broadcastChannel,
+                                  MatchIdExtractor matchIdExtractor, DeliveryRetryScheduler retryScheduler) {
         this.redisTemplate = redisTemplate;
-        this.webSocketHandler = webSocketHandler;
+        this.broadcastChannel = broadcastChannel;
+        this.matchIdExtractor = matchIdExtractor;
+        this.retryScheduler = retryScheduler;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.timer = new HashedWheelTimer(r -> {
+            Thread thread = new Thread(r, "delayed-message-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, 20, TimeUnit.MILLISECONDS, 1024);
+    }
+
+    /**
+     * 添加延迟消息
+     * @param message 消息内容（JSON，需包含 matchId 或 match_id）
+     * @param deliverAtMillis 推送时间（毫秒时间戳）
+     */
+    public void schedule(String message, long deliverAtMillis) {
+        redisTemplate.opsForZSet().add(DELAYED_KEY, message, deliverAtMillis);
     }
 
     /**
-     * 每隔1分钟扫描一次延迟消息队列
+     * 领取即将到期的消息并挂到本地时间轮（轮询间隔远小于 lookahead 窗口，保证亚秒级精度）
      */
-    @Scheduled(fixedRate = 60000)
+    @Scheduled(fixedDelayString = "${websocket.delayed.poll-interval-ms:200}")
     public void processDelayedMessages() {
-        long now = System.currentTimeMillis();
+        try {
+            long horizon = System.currentTimeMillis() + lookaheadMs;
+            List<String> claimed;
+            do {
+                claimed = claim(horizon);
+                for (int i = 0; i + 1 < claimed.size(); i += 2) {
+                    scheduleLocally(claimed.get(i), (long) Double.parseDouble(claimed.get(i + 1)));
+                }
+            } while (claimed.size() / 2 >= claimBatchSize);
+        } catch (Exception e) {
+            log.error("[Redis] 延迟消息领取失败:", e);
+        }
+    }
+
+    /**
+     * 归还失效实例领取但未触发的消息
+     */
+    @Scheduled(fixedDelayString = "${websocket.delayed.recover-interval-ms:30000}")
+    public void recoverStaleClaims() {
+        try {
+            Long recovered = redisTemplate.execute(RECOVER_SCRIPT, KEYS,
+                    String.valueOf(System.currentTimeMillis() - claimTimeoutMs), String.valueOf(claimBatchSize));
+            if (recovered != null && recovered > 0) {
+                log.warn("[Redis] 已归还 {} 条超时未触发的延迟消息", recovered);
+            }
+        } catch (Exception e) {
+            log.error("[Redis] 延迟消息归还失败:", e);
+        }
+    }
 
-        // 获取已到期的消息
-        Set<String> messages = redisTemplate.opsForZSet().rangeByScore("delayed_messages", 0, now);
+    @SuppressWarnings("unchecked")
+    private List<String> claim(long horizon) {
+        List<String> items = redisTemplate.execute(CLAIM_SCRIPT, KEYS,
+                String.valueOf(horizon), String.valueOf(claimBatchSize), String.valueOf(System.currentTimeMillis()));
+        return items != null ? items : List.of();
+    }
 
-        if (messages != null && !messages.isEmpty()) {
-            for (String message : messages) {
-                try {
-                    // 解析消息中的 match_id（示例）
-                    String matchId = extractMatchIdFromMessage(message);
+    private void scheduleLocally(String message, long deliverAt) {
+        long delay = Math.max(0, deliverAt - System.currentTimeMillis());
+        try {
+            timer.newTimeout(new DelayedDelivery(message, deliverAt), delay, TimeUnit.MILLISECONDS);
+            scheduledCount.incrementAndGet();
+        } catch (IllegalStateException e) {
+            // 时间轮已停止（应用关闭中），放回延迟队列
+            requeue(message, deliverAt);
+        }
+    }
 
-                    // 推送消息
-                    webSocketHandler.sendMessageToTopic(matchId, message);
+    /**
+     * 到期触发的推送任务
+     */
+    private final class DelayedDelivery implements TimerTask {
+        private final String message;
+        private final long deliverAt;
 
-                    // 移除已处理的消息
-                    redisTemplate.opsForZSet().remove("delayed_messages", message);
-                    log.info("[Redis] 延迟消息已处理: {}", message);
+        private DelayedDelivery(String message, long deliverAt) {
+            this.message = message;
+            this.deliverAt = deliverAt;
+        }
 
-                } catch (Exception e) {
-                    log.error("[Redis] 延迟消息处理失败:", e);
+        @Override
+        public void run(Timeout timeout) {
+            scheduledCount.decrementAndGet();
+            try {
+                // 解析消息中的 match_id
+                String matchId = matchIdExtractor.extract(message);
+                if (matchId == null) {
+                    log.warn("[Redis] 延迟消息缺少赛事ID，已丢弃: {}", message);
+                } else {
+                    try {
+                        // 发布到集群广播通道，由每个节点推送给本地订阅者
+                        broadcastChannel.publish(matchId, message);
+                    } catch (Exception e) {
+                        log.warn("[Redis] 延迟消息发布失败，转入死信队列: {}", matchId);
+                        retryScheduler.deadLetter(null, matchId, message);
+                    }
                 }
+                // 移除已处理的消息
+                redisTemplate.execute(COMPLETE_SCRIPT, List.of(CLAIMED_KEY, DELIVER_AT_KEY), message);
+                log.debug("[Redis] 延迟消息已处理: {} (延迟 {}ms)", message, System.currentTimeMillis() - deliverAt);
+            } catch (Exception e) {
+                log.error("[Redis] 延迟消息处理失败:", e);
             }
         }
     }
 
+    private void requeue(String message, long deliverAt) {
+        redisTemplate.execute(REQUEUE_SCRIPT, KEYS, message, String.valueOf(deliverAt));
+    }
+
+    /**
+     * 当前挂在本地时间轮上等待触发的消息数
+     * @return 消息数
+     */
+    public int getScheduledCount() {
+        return scheduledCount.get();
+    }
+
     /**
-     * 从消息中提取 match_id（示例逻辑）
-     * @param message 消息内容
-     * @return 赛事ID
+     * 关闭时将本地尚未触发的消息放回延迟队列，由其他实例继续处理
      */
-    private String extractMatchIdFromMessage(String message) {
-        // 示例解析逻辑（实际应使用 JSON 解析）
-        if (message.contains("match_id")) {
-            return "1001"; // 实际应从消息中提取真实 ID
+    @PreDestroy
+    public void shutdown() {
+        Set<Timeout> unprocessed = timer.stop();
+        for (Timeout timeout : unprocessed) {
+            if (timeout.task() instanceof DelayedDelivery delivery) {
+                try {
+                    requeue(delivery.message, delivery.deliverAt);
+                } catch (Exception e) {
+                    log.warn("[Redis] 延迟消息归还失败: {}", delivery.message);
+                }
+            }
         }
-        return "default";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+package com.example.sportsystem.pushservice.listener;
+
+import com.example.sportsystem.pushservice.handler.SendFailureHandler;
+import com.example.sportsystem.pushservice.service.DeadLetterQueueService;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 推送重试调度器
+ * 会话写入失败时，该会话的发送队列暂停并把失败的帧放回队首，由本调度器挂到时间轮上按带抖动的指数退避恢复发送，
+ * 只重发给失败的会话，不重新执行整条推送（不会重复推送给其他订阅者，也不会用旧比分覆盖快照）；
+ * 超过最大重试次数后关闭该会话，客户端重连后重新获取快照。
+ * 推送前即失败的消息（解析失败等）不经过重试，直接转入死信队列
+ */
+@Component
+@Slf4j
+public class DeliveryRetryScheduler implements SendFailureHandler {
+
+    private final DeadLetterQueueService deadLetterQueueService;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    // 时间轮：100ms 一格，重试延迟精度足够且调度开销为 O(1)
+    private final Timer timer;
+
+    private final AtomicInteger pendingRetries = new AtomicInteger(); // 等待重试的会话数
+    private final LongAdder retryAttempts = new LongAdder(); // 累计重试次数
+    private final LongAdder retrySuccesses = new LongAdder(); // 重试成功次数
+    private final LongAdder abandonedSessions = new LongAdder(); // 超过最大重试次数被关闭的会话数
+    private final LongAdder deadLetters = new LongAdder(); // 转入死信队列次数
+
+    public DeliveryRetryScheduler(DeadLetterQueueService deadLetterQueueService,
+                                  @Value("${websocket.retry.max-attempts:3}") int maxAttempts,
+                                  @Value("${websocket.retry.base-delay-ms:200}") long baseDelayMs,
+                                  @Value("${websocket.retry.max-delay-ms:5000}") long maxDelayMs) {
+        this.deadLetterQueueService = deadLetterQueueService;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.timer = new HashedWheelTimer(r -> {
+            Thread thread = new Thread(r, "push-retry-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, 100, TimeUnit.MILLISECONDS, 512);
+    }
+
+    @Override
+    public boolean onSendFailure(String sessionId, int attempt, Runnable resume) {
+        if (attempt > maxAttempts) {
+            log.error("[WebSocket] 推送失败超过最大重试次数: {}", sessionId);
+            abandonedSessions.increment();
+            return false;
+        }
+        pendingRetries.incrementAndGet();
+        try {
+            timer.newTimeout(timeout -> {
+                pendingRetries.decrementAndGet();
+                retryAttempts.increment();
+                resume.run();
+            }, backoffDelay(attempt), TimeUnit.MILLISECONDS);
+            log.warn("[WebSocket] 推送失败，第 {} 次重试: {}", attempt, sessionId);
+            return true;
+        } catch (IllegalStateException e) {
+            // 时间轮已停止（应用关闭中），放弃该会话
+            pendingRetries.decrementAndGet();
+            return false;
+        }
+    }
+
+    @Override
+    public void onSendRecovered(String sessionId) {
+        retrySuccesses.increment();
+    }
+
+    /**
+     * 推送前即失败的消息直接转入死信队列
+     * @param sourceStream 来源 Stream（不属于比分、盘口 Stream 的消息为 null）
+     * @param matchId 赛事ID（未知时为 unknown）
+     * @param message 消息内容
+     */
+    public void deadLetter(String sourceStream, String matchId, String message) {
+        deadLetters.increment();
+        try {
+            deadLetterQueueService.send(sourceStream, matchId, message);
+        } catch (Exception e) {
+            log.error("[Redis Stream] 写入死信队列失败:", e);
+        }
+    }
+
+    /**
+     * 计算退避时间：指数增长并封顶，在 [50%, 100%] 区间内随机抖动，避免重试同时触发
+     * @param attempt 第几次重试（从1开始）
+     * @return 延迟毫秒数
+     */
+    private long backoffDelay(int attempt) {
+        long delay = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * 获取重试统计
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pending_retries", pendingRetries.get());
+        stats.put("retry_attempts", retryAttempts.sum());
+        stats.put("retry_successes", retrySuccesses.sum());
+        stats.put("abandoned_sessions", abandonedSessions.sum());
+        stats.put("dead_letters", deadLetters.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+}
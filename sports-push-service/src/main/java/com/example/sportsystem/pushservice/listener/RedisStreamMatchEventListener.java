@@ -1,18 +1,16 @@
 package com.example.sportsystem.pushservice.listener;
 
+import com.example.sportsystem.pushservice.handler.ConflationKeys;
 import com.example.sportsystem.pushservice.handler.WebSocketHandshakeHandler;
+import com.example.sportsystem.pushservice.service.MatchStreamIndex;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.example.sportsystem.common.model.MatchScoreMessage;
+import com.example.sportsystem.common.model.OddsUpdateMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.stream.StreamListener;
-import org.springframework.data.redis.stream.ObjectRecord;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.connection.stream.StreamOffset;
-import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
 import org.springframework.stereotype.Component;
 
-import java.util.Map;
-
 /**
  * Redis Stream 监听器
  * 用于监听比分、事件、盘口等实时数据流
@@ -23,15 +21,20 @@ public class RedisStreamMatchEventListener implements StreamListener<String, Obj
 
     private final WebSocketHandshakeHandler webSocketHandler;
     private final ObjectMapper objectMapper;
-    private final StringRedisTemplate redisTemplate;
-    private static final int MAX_RETRY = 3;
+    private final StreamAckBatcher ackBatcher;
+    private final DeliveryRetryScheduler retryScheduler;
+    private final MatchStreamIndex matchStreamIndex;
 
     public RedisStreamMatchEventListener(WebSocketHandshakeHandler webSocketHandler,
                                          ObjectMapper objectMapper,
-                                         StringRedisTemplate redisTemplate) {
+                                         StreamAckBatcher ackBatcher,
+                                         DeliveryRetryScheduler retryScheduler,
+                                         MatchStreamIndex matchStreamIndex) {
         this.webSocketHandler = webSocketHandler;
         this.objectMapper = objectMapper;
-        this.redisTemplate = redisTemplate;
+        this.ackBatcher = ackBatcher;
+        this.retryScheduler = retryScheduler;
+        this.matchStreamIndex = matchStreamIndex;
     }
 
     /**
@@ -42,61 +45,31 @@ public class RedisStreamMatchEventListener implements StreamListener<String, Obj
     public void onMessage(ObjectRecord<String, String> record) {
         String streamKey = record.getStream();
         String message = record.getValue();
-        String id = record.getId().getValue();
 
-        log.info("[Redis Stream] 收到消息: {} from {}", message, streamKey);
+        log.debug("[Redis Stream] 收到消息: {} from {}", message, streamKey);
 
+        // 解析成功后记录赛事ID，推送失败时死信条目带上真实赛事ID（清理任务会丢弃无法识别赛事的条目）
+        String matchId = "unknown";
         try {
             if ("match_stream".equals(streamKey)) {
                 MatchScoreMessage scoreMessage = objectMapper.readValue(message, MatchScoreMessage.class);
-                retrySendMessage(scoreMessage.getMatchId(), message, 0);
+                matchId = scoreMessage.getMatchId();
+                matchStreamIndex.index(streamKey, scoreMessage.getMatchId(), record.getId(), message);
+                // 比分消息不可合并，每一条都必须送达（单个会话写入失败由发送队列退避重试）
+                webSocketHandler.sendScoreToTopic(scoreMessage, message);
             } else if ("odds_stream".equals(streamKey)) {
                 OddsUpdateMessage oddsMessage = objectMapper.readValue(message, OddsUpdateMessage.class);
-                retrySendMessage(oddsMessage.getMatchId(), message, 0);
+                matchId = oddsMessage.getMatchId();
+                matchStreamIndex.index(streamKey, oddsMessage.getMatchId(), record.getId(), message);
+                String oddsKey = ConflationKeys.odds(oddsMessage);
+                webSocketHandler.sendOddsToTopic(oddsMessage, oddsKey, message);
             }
-
-            // 手动提交偏移量
-            redisTemplate.getConnectionFactory().getConnection()
-                    .streamCommands()
-                    .xAck(streamKey.getBytes(), "sports-push-consumer-group", id);
-
         } catch (Exception e) {
             log.error("[WebSocket] 推送失败:", e);
-            sendToDeadLetterQueue("unknown", message);
-        }
-    }
-
-    /**
-     * 带重试的消息推送方法
-     * @param matchId 赛事ID
-     * @param message 消息内容
-     * @param retryCount 当前重试次数
-     */
-    private void retrySendMessage(String matchId, String message, int retryCount) {
-        try {
-            webSocketHandler.sendMessageToTopic(matchId, message);
-        } catch (Exception e) {
-            if (retryCount < MAX_RETRY) {
-                log.warn("[WebSocket] 推送失败，第 {} 次重试...", retryCount + 1);
-                try {
-                    Thread.sleep(1000 * (retryCount + 1)); // 指数退避
-                } catch (InterruptedException ignored) {}
-                retrySendMessage(matchId, message, retryCount + 1);
-            } else {
-                log.error("[WebSocket] 推送失败超过最大重试次数:", e);
-                sendToDeadLetterQueue(matchId, message);
-            }
+            retryScheduler.deadLetter(streamKey, matchId, message);
         }
-    }
 
-    /**
-     * 将消息发送到死信队列
-     * @param matchId 赛事ID
-     * @param message 消息内容
-     */
-    private void sendToDeadLetterQueue(String matchId, String message) {
-        String dlqKey = "dlq_" + matchId;
-        redisTemplate.opsForStream().add(dlqKey, Map.of("match_id", matchId, "message", message));
-        log.info("[Redis Stream] 消息已写入死信队列: {}@{}", dlqKey, message);
+        // 手动提交偏移量（批量合并后以管道方式提交）；推送前即失败的消息已转入死信队列
+        ackBatcher.acknowledge(streamKey, record.getId());
     }
-}
\ No newline at end of file
+}
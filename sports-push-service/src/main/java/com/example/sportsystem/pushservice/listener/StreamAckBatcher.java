@@ -0,0 +1,109 @@
+package com.example.sportsystem.pushservice.listener;
+
+import com.example.sportsystem.pushservice.config.StreamConsumerGroups;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Redis Stream 批量确认器
+ * 累积已处理消息的 ID，按数量或时间触发，每个 Stream 一条多 ID 的 XACK，并通过管道一次发送；
+ * 进程退出前未提交的 ID 留在 PEL 中，由 {@link StreamPendingReclaimer} 回收
+ */
+@Component
+@Slf4j
+public class StreamAckBatcher {
+
+    private final StringRedisTemplate redisTemplate;
+    private final String consumerGroup;
+    private final int batchSize;
+
+    // 按 Stream 暂存待确认的消息 ID
+    private final Map<String, Queue<RecordId>> pendingAcks = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+    public StreamAckBatcher(StringRedisTemplate redisTemplate,
+                            StreamConsumerGroups consumerGroups,
+                            @Value("${websocket.redis.stream.batch-size:200}") int batchSize,
+                            @Value("${websocket.redis.stream.ack-interval-ms:50}") long ackIntervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.consumerGroup = consumerGroups.getConsumerGroup();
+        this.batchSize = batchSize;
+        scheduler.scheduleWithFixedDelay(this::flush, ackIntervalMs, ackIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记待确认的消息，累计达到批量大小时立即提交
+     * @param streamKey Stream 名称
+     * @param recordId 消息ID
+     */
+    public void acknowledge(String streamKey, RecordId recordId) {
+        pendingAcks.computeIfAbsent(streamKey, k -> new ConcurrentLinkedQueue<>()).add(recordId);
+        if (pendingCount.incrementAndGet() >= batchSize) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * 以管道方式批量提交 XACK
+     */
+    private synchronized void flush() {
+        if (pendingCount.get() == 0) {
+            return;
+        }
+        Map<byte[], String[]> batches = new LinkedHashMap<>();
+        pendingAcks.forEach((streamKey, queue) -> {
+            List<String> ids = new ArrayList<>();
+            RecordId id;
+            while ((id = queue.poll()) != null) {
+                ids.add(id.getValue());
+            }
+            if (!ids.isEmpty()) {
+                pendingCount.addAndGet(-ids.size());
+                batches.put(streamKey.getBytes(StandardCharsets.UTF_8), ids.toArray(new String[0]));
+            }
+        });
+        if (batches.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                ackAll(connection, batches);
+                return null;
+            });
+        } catch (Exception e) {
+            // 未确认的消息保留在 PEL 中，空闲超时后由 StreamPendingReclaimer 回收并重新投递
+            log.error("[Redis Stream] 批量确认失败:", e);
+        }
+    }
+
+    private void ackAll(RedisConnection connection, Map<byte[], String[]> batches) {
+        batches.forEach((streamKey, ids) -> connection.streamCommands().xAck(streamKey, consumerGroup, ids));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.sportsystem.pushservice.listener;
+
+import com.example.sportsystem.pushservice.config.StreamConsumerGroups;
+import com.example.sportsystem.pushservice.service.DeadLetterQueueService;
+import com.example.sportsystem.pushservice.service.MatchIdExtractor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redis Stream 待确认消息（PEL）回收任务
+ * 读取后未能确认的消息（进程崩溃、批量确认失败、消费者改名）会一直留在消费者组的 PEL 中，
+ * 监听容器只读取新消息，不会再投递它们。本任务定期以 XPENDING 找出空闲超时的条目，
+ * 通过 XCLAIM（带最小空闲时间，多节点同时回收时只有一个节点成功）转到本消费者名下后重新交给监听器处理；
+ * 投递次数超过上限的条目转入死信队列并确认，避免 PEL 无限增长
+ */
+@Component
+@Slf4j
+public class StreamPendingReclaimer {
+
+    // ObjectRecord<String, String> 写入 Stream 时的字段名
+    private static final String PAYLOAD_FIELD = "payload";
+
+    private final StringRedisTemplate redisTemplate;
+    private final StreamConsumerGroups consumerGroups;
+    private final RedisStreamMatchEventListener streamListener;
+    private final StreamAckBatcher ackBatcher;
+    private final DeadLetterQueueService deadLetterQueueService;
+    private final MatchIdExtractor matchIdExtractor;
+
+    // 条目空闲超过该时间才回收，需明显大于批量确认间隔，避免回收仍在处理中的消息
+    @Value("${websocket.redis.stream.pending-idle-ms:30000}")
+    private long pendingIdleMs;
+
+    // 单次每个 Stream 最多检查的待确认条目数
+    @Value("${websocket.redis.stream.pending-batch-size:200}")
+    private int pendingBatchSize;
+
+    // 投递次数上限，超过后转入死信队列
+    @Value("${websocket.redis.stream.pending-max-deliveries:5}")
+    private long maxDeliveries;
+
+    private final LongAdder reclaimed = new LongAdder(); // 重新投递的条目数
+    private final LongAdder deadLettered = new LongAdder(); // 超过投递上限转入死信队列的条目数
+
+    public StreamPendingReclaimer(StringRedisTemplate redisTemplate, StreamConsumerGroups consumerGroups,
+                                  RedisStreamMatchEventListener streamListener, StreamAckBatcher ackBatcher,
+                                  DeadLetterQueueService deadLetterQueueService, MatchIdExtractor matchIdExtractor) {
+        this.redisTemplate = redisTemplate;
+        this.consumerGroups = consumerGroups;
+        this.streamListener = streamListener;
+        this.ackBatcher = ackBatcher;
+        this.deadLetterQueueService = deadLetterQueueService;
+        this.matchIdExtractor = matchIdExtractor;
+    }
+
+    /**
+     * 启动时立即执行一次（回收本节点上次退出前未确认的消息），之后按固定间隔执行
+     */
+    @Scheduled(fixedDelayString = "${websocket.redis.stream.pending-check-ms:30000}")
+    public void reclaimPending() {
+        for (String streamKey : consumerGroups.getStreamKeys()) {
+            try {
+                reclaim(streamKey);
+            } catch (Exception e) {
+                log.error("[Redis Stream] 待确认消息回收失败: {}", streamKey, e);
+            }
+        }
+    }
+
+    private void reclaim(String streamKey) {
+        String group = consumerGroups.getConsumerGroup();
+        PendingMessages pending = redisTemplate.opsForStream().pending(streamKey, group, Range.unbounded(), pendingBatchSize);
+        if (pending == null || pending.isEmpty()) {
+            return;
+        }
+        List<RecordId> idle = new ArrayList<>();
+        for (PendingMessage message : pending) {
+            if (message.getElapsedTimeSinceLastDelivery().toMillis() >= pendingIdleMs) {
+                idle.add(message.getId());
+            }
+        }
+        if (idle.isEmpty()) {
+            return;
+        }
+        Map<RecordId, Long> deliveryCounts = new HashMap<>();
+        pending.forEach(message -> deliveryCounts.put(message.getId(), message.getTotalDeliveryCount()));
+
+        // 未返回的条目已被其他节点领取（空闲时间已重置）或已从 Stream 中裁剪（Redis 7 的 XCLAIM 会同时从 PEL 中删除）
+        List<MapRecord<String, Object, Object>> claimed = redisTemplate.opsForStream().claim(streamKey, group,
+                consumerGroups.getConsumerName(), Duration.ofMillis(pendingIdleMs), idle.toArray(new RecordId[0]));
+        for (MapRecord<String, Object, Object> record : claimed) {
+            Object payload = record.getValue().get(PAYLOAD_FIELD);
+            if (payload == null) {
+                ackBatcher.acknowledge(streamKey, record.getId());
+                continue;
+            }
+            if (deliveryCounts.getOrDefault(record.getId(), 0L) >= maxDeliveries) {
+                log.warn("[Redis Stream] 消息投递次数超过上限，转入死信队列: {}@{}", record.getId(), streamKey);
+                // 死信清理任务会丢弃无法识别赛事的条目，解析不出赛事ID的消息才记为 unknown
+                String matchId = matchIdExtractor.extract(payload.toString());
+                deadLetterQueueService.send(streamKey, matchId != null ? matchId : "unknown", payload.toString());
+                ackBatcher.acknowledge(streamKey, record.getId());
+                deadLettered.increment();
+                continue;
+            }
+            ObjectRecord<String, String> objectRecord = StreamRecords.newRecord()
+                    .in(streamKey)
+                    .withId(record.getId())
+                    .ofObject(payload.toString());
+            // 监听器处理完成后通过批量确认器提交 XACK
+            streamListener.onMessage(objectRecord);
+            reclaimed.increment();
+        }
+        if (!claimed.isEmpty()) {
+            log.info("[Redis Stream] 已回收 {} 条空闲的待确认消息: {}", claimed.size(), streamKey);
+        }
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("reclaimed", reclaimed.sum());
+        stats.put("dead_lettered", deadLettered.sum());
+        return stats;
+    }
+}
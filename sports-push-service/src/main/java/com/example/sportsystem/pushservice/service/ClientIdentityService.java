@@ -1,30 +1,32 @@
 package com.example.sportsystem.pushservice.service;
 
-import com.example.sportsystem.pushservice.handler.WebSocketSessionManager;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
 import org.springframework.stereotype.Component;
 
 import java.net.InetAddress;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.UUID;
 
 /**
  * WebSocket 客户端身份识别与行为分析服务
  */
 @Component
-@AllArgsConstructor
 public class ClientIdentityService {
 
-    private final WebSocketSessionManager sessionManager;
-
     // 客户端连接信息存储
     private final Map<String, ClientInfo> clientRegistry = new ConcurrentHashMap<>();
 
     /**
      * 客户端信息模型
+     * 活跃状态使用基本类型与计数器，每条入站消息的更新不分配对象、多线程下计数准确
      */
     @Data
     public static class ClientInfo {
@@ -33,9 +35,20 @@ public class ClientIdentityService {
         private String userAgent; // User-Agent
         private String token; // Token
         private LocalDateTime connectTime; // 连接时间
-        private LocalDateTime lastActiveTime; // 最后活跃时间
-        private String currentMatchId; // 当前订阅赛事ID
-        private int messageCount; // 推送消息数量
+        private volatile long lastActiveNanos; // 最后活跃时间（System.nanoTime）
+        private volatile String currentMatchId; // 当前订阅赛事ID
+        @Getter(AccessLevel.NONE)
+        @Setter(AccessLevel.NONE)
+        @EqualsAndHashCode.Exclude
+        private final LongAdder messageCount = new LongAdder(); // 推送消息数量
+
+        /**
+         * 获取推送消息数量
+         * @return 消息数量
+         */
+        public long getMessageCount() {
+            return messageCount.sum();
+        }
     }
 
     /**
@@ -53,7 +66,7 @@ public class ClientIdentityService {
         info.setUserAgent(userAgent);
         info.setToken(token);
         info.setConnectTime(LocalDateTime.now());
-        info.setLastActiveTime(LocalDateTime.now());
+        info.setLastActiveNanos(System.nanoTime());
         clientRegistry.put(sessionId, info);
         return info;
     }
@@ -65,8 +78,21 @@ public class ClientIdentityService {
     public void updateLastActiveTime(String sessionId) {
         ClientInfo info = clientRegistry.get(sessionId);
         if (info != null) {
-            info.setLastActiveTime(LocalDateTime.now());
+            info.setLastActiveNanos(System.nanoTime());
+        }
+    }
+
+    /**
+     * 获取客户端距最后一次活跃的毫秒数
+     * @param sessionId 会话ID
+     * @return 空闲毫秒数，客户端未注册时返回 -1
+     */
+    public long getIdleMillis(String sessionId) {
+        ClientInfo info = clientRegistry.get(sessionId);
+        if (info == null) {
+            return -1;
         }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - info.getLastActiveNanos());
     }
 
     /**
@@ -88,7 +114,7 @@ public class ClientIdentityService {
     public void incrementMessageCount(String sessionId) {
         ClientInfo info = clientRegistry.get(sessionId);
         if (info != null) {
-            info.setMessageCount(info.getMessageCount() + 1);
+            info.messageCount.increment();
         }
     }
 
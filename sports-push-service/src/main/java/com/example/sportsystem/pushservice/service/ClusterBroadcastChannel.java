@@ -0,0 +1,76 @@
+package com.example.sportsystem.pushservice.service;
+
+import com.example.sportsystem.pushservice.handler.WebSocketHandshakeHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 集群广播通道（Redis Pub/Sub）
+ * 不属于比分、盘口 Stream 的推送（延迟消息、死信重放等）经此通道发布，
+ * 每个推送节点都订阅该通道，收到后只推送给本节点上订阅了该赛事的会话，与集群消费模式无关
+ */
+@Component
+@Slf4j
+public class ClusterBroadcastChannel implements MessageListener {
+
+    private static final String FIELD_MATCH_ID = "match_id";
+    private static final String FIELD_MESSAGE = "message";
+
+    private final StringRedisTemplate redisTemplate;
+    private final WebSocketHandshakeHandler webSocketHandler;
+    private final ObjectMapper objectMapper;
+
+    // 广播通道名称
+    @Value("${websocket.cluster.broadcast-channel:push:topic_broadcast}")
+    private String channel;
+
+    public ClusterBroadcastChannel(StringRedisTemplate redisTemplate, WebSocketHandshakeHandler webSocketHandler,
+                                   ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.webSocketHandler = webSocketHandler;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 向所有推送节点发布赛事消息
+     * @param matchId 赛事ID
+     * @param message 消息内容
+     * @throws org.springframework.dao.DataAccessException 发布失败
+     */
+    public void publish(String matchId, String message) {
+        ObjectNode envelope = objectMapper.createObjectNode();
+        envelope.put(FIELD_MATCH_ID, matchId);
+        envelope.put(FIELD_MESSAGE, message);
+        redisTemplate.convertAndSend(channel, envelope.toString());
+    }
+
+    /**
+     * 收到广播后推送给本节点的订阅者
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            JsonNode envelope = objectMapper.readTree(new String(message.getBody(), StandardCharsets.UTF_8));
+            String matchId = envelope.path(FIELD_MATCH_ID).asText(null);
+            String payload = envelope.path(FIELD_MESSAGE).asText(null);
+            if (matchId != null && payload != null) {
+                webSocketHandler.sendMessageToTopic(matchId, payload);
+            }
+        } catch (Exception e) {
+            log.warn("[Redis] 无法解析的集群广播消息: {}", e.getMessage());
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+}
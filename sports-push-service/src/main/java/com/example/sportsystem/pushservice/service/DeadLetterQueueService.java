@@ -0,0 +1,95 @@
+package com.example.sportsystem.pushservice.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 推送死信队列服务
+ * 所有赛事共用一个死信 Stream，条目中记录赛事ID与来源 Stream，由消费者组分批领取后重新发布到来源
+ */
+@Service
+@Slf4j
+public class DeadLetterQueueService {
+
+    public static final String FIELD_MATCH_ID = "match_id";
+    public static final String FIELD_MESSAGE = "message";
+    public static final String FIELD_FAILED_AT = "failed_at";
+    public static final String FIELD_SOURCE_STREAM = "source_stream";
+
+    private final StringRedisTemplate redisTemplate;
+    private final MatchIdExtractor matchIdExtractor;
+    private final String streamKey;
+    private final String consumerGroup;
+
+    public DeadLetterQueueService(StringRedisTemplate redisTemplate,
+                                  MatchIdExtractor matchIdExtractor,
+                                  @Value("${websocket.dlq.stream-key:push_dlq_stream}") String streamKey,
+                                  @Value("${websocket.dlq.consumer-group:push-dlq-group}") String consumerGroup) {
+        this.redisTemplate = redisTemplate;
+        this.matchIdExtractor = matchIdExtractor;
+        this.streamKey = streamKey;
+        this.consumerGroup = consumerGroup;
+    }
+
+    /**
+     * 确保死信消费者组存在
+     */
+    @PostConstruct
+    public void createGroup() {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(streamKey.getBytes(StandardCharsets.UTF_8), consumerGroup, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // BUSYGROUP：消费者组已存在
+            log.debug("[Redis DLQ] 消费者组已存在: {}@{}", consumerGroup, streamKey);
+        }
+    }
+
+    /**
+     * 将消息发送到死信队列
+     * @param matchId 赛事ID（未知时从消息内容解析）
+     * @param message 消息内容
+     */
+    public void send(String matchId, String message) {
+        send(null, matchId, message);
+    }
+
+    /**
+     * 将消息发送到死信队列
+     * @param sourceStream 来源 Stream（不属于比分、盘口 Stream 的消息为 null）
+     * @param matchId 赛事ID（未知时从消息内容解析）
+     * @param message 消息内容
+     */
+    public void send(String sourceStream, String matchId, String message) {
+        String resolvedMatchId = matchId != null && !"unknown".equals(matchId) ? matchId : matchIdExtractor.extract(message);
+        if (resolvedMatchId == null) {
+            resolvedMatchId = "unknown";
+        }
+        Map<String, String> fields = new HashMap<>();
+        fields.put(FIELD_MATCH_ID, resolvedMatchId);
+        fields.put(FIELD_MESSAGE, message);
+        fields.put(FIELD_FAILED_AT, String.valueOf(System.currentTimeMillis()));
+        if (sourceStream != null) {
+            fields.put(FIELD_SOURCE_STREAM, sourceStream);
+        }
+        redisTemplate.opsForStream().add(streamKey, fields);
+        log.info("[Redis Stream] 消息已写入死信队列: {}@{}", streamKey, resolvedMatchId);
+    }
+
+    public String getStreamKey() {
+        return streamKey;
+    }
+
+    public String getConsumerGroup() {
+        return consumerGroup;
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.sportsystem.pushservice.service;
+
+import com.example.sportsystem.pushservice.handler.WebSocketSessionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 握手准入控制
+ * 节点级与单 IP 级令牌桶限制每秒握手数，并限制节点最大连接数；拒绝时给出带随机抖动的 Retry-After，
+ * 把重连高峰摊开到一段时间内，保证已连接会话的推送延迟稳定。
+ * 匿名连接（启用时）不能占用为认证用户预留的令牌与连接数。
+ * 准入时在锁内检查并预留连接名额，连接建立（或握手失败）后释放预留，并发握手不会超过连接数上限
+ */
+@Service
+public class HandshakeAdmissionService {
+
+    private final WebSocketSessionManager sessionManager;
+
+    private final TokenBucket nodeBucket;
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+
+    private final double ipRate;
+    private final double ipBurst;
+    private final int maxConnections;
+    private final double anonymousReserveRatio;
+    private final int retryAfterJitterSeconds;
+
+    // 单 IP 令牌桶补满后空闲超过该时间即被清理
+    @Value("${websocket.admission.ip-bucket-idle-ms:60000}")
+    private long ipBucketIdleMs;
+
+    // 已准入但尚未建立连接的握手预留超过该时间视为握手失败，释放名额
+    @Value("${websocket.admission.reservation-timeout-ms:30000}")
+    private long reservationTimeoutMs;
+
+    // 已准入、尚未建立连接的握手：预留ID -> 预留时间（纳秒）
+    private final Map<Long, Long> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong reservationIds = new AtomicLong();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedNodeRate = new LongAdder();
+    private final LongAdder rejectedIpRate = new LongAdder();
+    private final LongAdder rejectedMaxConnections = new LongAdder();
+
+    /**
+     * 准入结果
+     * @param admitted 是否允许握手
+     * @param status 拒绝时的 HTTP 状态码
+     * @param retryAfterSeconds 拒绝时建议的重试等待秒数
+     * @param reservationId 准入时预留的连接名额（连接建立或握手失败后通过 {@link #release} 释放）
+     */
+    public record Admission(boolean admitted, HttpStatus status, long retryAfterSeconds, long reservationId) {
+    }
+
+    /**
+     * 令牌桶（按时间惰性补充令牌）
+     */
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+        private long lastAcquireNanos;
+
+        private TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+            this.lastAcquireNanos = lastRefillNanos;
+        }
+
+        /**
+         * 获取一个令牌，获取后剩余令牌不得低于 reserved
+         * @return 获取成功返回 0，否则返回补足所需的纳秒数
+         */
+        private synchronized long tryAcquire(double reserved) {
+            refill();
+            lastAcquireNanos = lastRefillNanos;
+            if (tokens - 1 >= reserved) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((reserved + 1 - tokens) / ratePerNano);
+        }
+
+        private synchronized boolean isFullAndIdle(long idleNanos) {
+            refill();
+            return tokens >= capacity && lastRefillNanos - lastAcquireNanos >= idleNanos;
+        }
+
+        /**
+         * 退还一个令牌（后续检查拒绝时使用）
+         */
+        private synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerNano);
+            lastRefillNanos = now;
+        }
+    }
+
+    public HandshakeAdmissionService(WebSocketSessionManager sessionManager,
+                                     @Value("${websocket.admission.node-rate:500}") double nodeRate,
+                                     @Value("${websocket.admission.node-burst:1000}") double nodeBurst,
+                                     @Value("${websocket.admission.ip-rate:5}") double ipRate,
+                                     @Value("${websocket.admission.ip-burst:20}") double ipBurst,
+                                     @Value("${websocket.admission.max-connections:50000}") int maxConnections,
+                                     @Value("${websocket.admission.anonymous-reserve-ratio:0.2}") double anonymousReserveRatio,
+                                     @Value("${websocket.admission.retry-after-jitter-seconds:10}") int retryAfterJitterSeconds) {
+        this.sessionManager = sessionManager;
+        this.nodeBucket = new TokenBucket(nodeRate, nodeBurst);
+        this.ipRate = ipRate;
+        this.ipBurst = ipBurst;
+        this.maxConnections = maxConnections;
+        this.anonymousReserveRatio = anonymousReserveRatio;
+        this.retryAfterJitterSeconds = Math.max(0, retryAfterJitterSeconds);
+    }
+
+    /**
+     * 判断握手是否准入
+     * @param ipAddress 客户端 IP
+     * @param authenticated 是否为认证用户（匿名用户不能使用预留容量）
+     * @return 准入结果
+     */
+    public Admission admit(String ipAddress, boolean authenticated) {
+        // 连接数上限：匿名用户只能使用 (1 - 预留比例) 的连接数；检查与预留在同一把锁内完成
+        int connectionLimit = authenticated ? maxConnections : (int) (maxConnections * (1 - anonymousReserveRatio));
+        long reservationId = reserve(connectionLimit);
+        if (reservationId < 0) {
+            rejectedMaxConnections.increment();
+            return reject(HttpStatus.SERVICE_UNAVAILABLE, 1);
+        }
+
+        // 单 IP 限流（先于节点限流，避免单个来源耗尽节点令牌）
+        TokenBucket ipBucket = ipBuckets.computeIfAbsent(ipAddress, k -> new TokenBucket(ipRate, ipBurst));
+        long ipWaitNanos = ipBucket.tryAcquire(0);
+        if (ipWaitNanos > 0) {
+            release(reservationId);
+            rejectedIpRate.increment();
+            return reject(HttpStatus.TOO_MANY_REQUESTS, toSeconds(ipWaitNanos));
+        }
+
+        // 节点限流：匿名用户获取令牌后须保留一定比例的令牌给认证用户
+        double reserved = authenticated ? 0 : nodeBucket.capacity * anonymousReserveRatio;
+        long nodeWaitNanos = nodeBucket.tryAcquire(reserved);
+        if (nodeWaitNanos > 0) {
+            // 节点拒绝不应消耗客户端的单 IP 配额
+            ipBucket.refund();
+            release(reservationId);
+            rejectedNodeRate.increment();
+            return reject(HttpStatus.SERVICE_UNAVAILABLE, toSeconds(nodeWaitNanos));
+        }
+
+        admitted.increment();
+        return new Admission(true, HttpStatus.SWITCHING_PROTOCOLS, 0, reservationId);
+    }
+
+    /**
+     * 在连接数（已建立连接 + 已准入未建立的握手）低于上限时预留一个名额
+     * @param connectionLimit 连接数上限
+     * @return 预留ID，已达上限时返回 -1
+     */
+    private synchronized long reserve(int connectionLimit) {
+        if (sessionManager.getTotalConnectionCount() + reservations.size() >= connectionLimit) {
+            expireReservations();
+            if (sessionManager.getTotalConnectionCount() + reservations.size() >= connectionLimit) {
+                return -1;
+            }
+        }
+        long reservationId = reservationIds.incrementAndGet();
+        reservations.put(reservationId, System.nanoTime());
+        return reservationId;
+    }
+
+    /**
+     * 释放预留的连接名额（连接已加入会话管理器或握手未完成时调用，重复释放无影响）
+     * @param reservationId 预留ID
+     */
+    public void release(long reservationId) {
+        reservations.remove(reservationId);
+    }
+
+    /**
+     * 清理超时的预留（握手失败且未回调释放）
+     */
+    private void expireReservations() {
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(reservationTimeoutMs);
+        reservations.values().removeIf(reservedAt -> reservedAt - deadline < 0);
+    }
+
+    /**
+     * 拒绝握手，Retry-After 在最短等待时间上叠加随机抖动，避免被拒绝的客户端同时重试
+     */
+    private Admission reject(HttpStatus status, long minWaitSeconds) {
+        long jitter = retryAfterJitterSeconds > 0 ? ThreadLocalRandom.current().nextInt(retryAfterJitterSeconds + 1) : 0;
+        return new Admission(false, status, Math.max(1, minWaitSeconds) + jitter, -1);
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * 定期清理已补满且空闲的单 IP 令牌桶与超时的连接预留
+     */
+    @Scheduled(fixedDelayString = "${websocket.admission.ip-bucket-cleanup-ms:60000}")
+    public void cleanupIpBuckets() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(ipBucketIdleMs);
+        ipBuckets.values().removeIf(bucket -> bucket.isFullAndIdle(idleNanos));
+        expireReservations();
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("admitted", admitted.sum());
+        stats.put("rejected_node_rate", rejectedNodeRate.sum());
+        stats.put("rejected_ip_rate", rejectedIpRate.sum());
+        stats.put("rejected_max_connections", rejectedMaxConnections.sum());
+        stats.put("tracked_ips", ipBuckets.size());
+        stats.put("pending_handshakes", reservations.size());
+        stats.put("max_connections", maxConnections);
+        return stats;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.sportsystem.pushservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * 从 JSON 消息中解析赛事ID
+ * 兼容 matchId（比分/盘口消息）与 match_id（延迟消息等）两种字段名
+ */
+@Component
+public class MatchIdExtractor {
+
+    private final ObjectMapper objectMapper;
+
+    public MatchIdExtractor(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 解析赛事ID
+     * @param message 消息内容（JSON）
+     * @return 赛事ID，无法解析时返回 null
+     */
+    public String extract(String message) {
+        if (message == null || message.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(message);
+            JsonNode matchId = root.hasNonNull("matchId") ? root.get("matchId") : root.get("match_id");
+            return matchId != null && !matchId.isNull() ? matchId.asText() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
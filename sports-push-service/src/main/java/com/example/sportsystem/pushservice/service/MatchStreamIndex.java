@@ -0,0 +1,219 @@
+package com.example.sportsystem.pushservice.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按赛事拆分的 Stream 二级索引
+ * 消费全局 Stream 时，将每条消息以原始 ID 追加到 {streamKey}:{matchId} 的定长 Stream 中，
+ * 回放接口只需读取单场赛事的索引 Stream，无需扫描全局 Stream。
+ * 脚本只加载一次，之后以 EVALSHA 管道写入；重复与乱序未写入的条目分别计数。
+ * 死信清理任务写回全局 Stream 的条目使用新的 ID，会在索引中再出现一次（见 RedisDlqCleanerJob）
+ */
+@Component
+@Slf4j
+public class MatchStreamIndex {
+
+    // 以原始 ID 写入索引并刷新过期时间。返回 1 表示写入；0 表示该 ID 已存在（广播模式下多个节点索引同一条消息，只保留一份）；
+    // -1 表示 ID 小于索引中最新的 ID（共享模式下其他节点已写入更新的消息），该条目无法按原始 ID 写入
+    private static final DefaultRedisScript<Long> INDEX_SCRIPT = new DefaultRedisScript<>(
+            "local added = redis.pcall('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], ARGV[2], 'payload', ARGV[3]) " +
+            "local result = 1 " +
+            "if type(added) == 'table' and added.err then " +
+            "  if #redis.call('XRANGE', KEYS[1], ARGV[2], ARGV[2]) > 0 then result = 0 else result = -1 end " +
+            "end " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[4]) " +
+            "return result", Long.class);
+    private static final byte[] INDEX_SCRIPT_BODY = INDEX_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+
+    private final StringRedisTemplate redisTemplate;
+    private final int batchSize;
+
+    // 单场赛事索引保留的最大条数（近似裁剪）
+    @Value("${websocket.replay.index-max-length:1000}")
+    private long indexMaxLength;
+
+    // 索引最后一次写入后的保留时间，赛事结束后自动过期
+    @Value("${websocket.replay.index-ttl-ms:86400000}")
+    private long indexTtlMs;
+
+    private final Queue<IndexEntry> pendingEntries = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+    // 脚本是否已通过 SCRIPT LOAD 加载（管道中只发送 EVALSHA）
+    private volatile boolean scriptLoaded;
+
+    private final LongAdder written = new LongAdder(); // 写入的条目数
+    private final LongAdder duplicates = new LongAdder(); // 已存在而跳过的条目数
+    private final LongAdder outOfOrder = new LongAdder(); // ID 乱序无法写入的条目数
+    private final LongAdder failed = new LongAdder(); // 写入失败丢弃的条目数
+
+    /**
+     * 待写入的索引条目
+     */
+    private record IndexEntry(byte[] indexKey, byte[] recordId, byte[] payload) {
+    }
+
+    public MatchStreamIndex(StringRedisTemplate redisTemplate,
+                            @Value("${websocket.redis.stream.batch-size:200}") int batchSize,
+                            @Value("${websocket.replay.flush-interval-ms:50}") long flushIntervalMs) {
+        this.redisTemplate = redisTemplate;
+        this.batchSize = batchSize;
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 索引 Stream 名称
+     * @param streamKey 全局 Stream 名称
+     * @param matchId 赛事ID
+     * @return 索引 Stream 名称
+     */
+    public String indexKey(String streamKey, String matchId) {
+        return streamKey + ":" + matchId;
+    }
+
+    /**
+     * 登记一条待索引的消息，累计达到批量大小时立即写入
+     * @param streamKey 全局 Stream 名称
+     * @param matchId 赛事ID
+     * @param recordId 消息在全局 Stream 中的 ID
+     * @param payload 消息内容
+     */
+    public void index(String streamKey, String matchId, RecordId recordId, String payload) {
+        if (matchId == null) {
+            return;
+        }
+        pendingEntries.add(new IndexEntry(
+                indexKey(streamKey, matchId).getBytes(StandardCharsets.UTF_8),
+                recordId.getValue().getBytes(StandardCharsets.UTF_8),
+                payload.getBytes(StandardCharsets.UTF_8)));
+        if (pendingCount.incrementAndGet() >= batchSize) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * 以管道方式批量写入索引
+     */
+    private synchronized void flush() {
+        if (pendingCount.get() == 0) {
+            return;
+        }
+        List<IndexEntry> entries = new ArrayList<>();
+        IndexEntry entry;
+        while ((entry = pendingEntries.poll()) != null) {
+            entries.add(entry);
+        }
+        pendingCount.addAndGet(-entries.size());
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            count(writeEntries(entries));
+        } catch (Exception e) {
+            if (!isNoScript(e)) {
+                // 索引仅用于回放，写入失败不影响实时推送
+                failed.add(entries.size());
+                log.error("[Redis Stream] 赛事索引写入失败，丢弃 {} 条:", entries.size(), e);
+                return;
+            }
+            // 脚本缓存被清空（如 Redis 重启或主从切换），重新加载后重试一次
+            scriptLoaded = false;
+            try {
+                count(writeEntries(entries));
+            } catch (Exception retryError) {
+                failed.add(entries.size());
+                log.error("[Redis Stream] 赛事索引写入失败，丢弃 {} 条:", entries.size(), retryError);
+            }
+        }
+    }
+
+    /**
+     * 以 EVALSHA 管道写入一批索引条目
+     * @return 每个条目的脚本返回值
+     */
+    private List<Object> writeEntries(List<IndexEntry> entries) {
+        if (!scriptLoaded) {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.scriptingCommands().scriptLoad(INDEX_SCRIPT_BODY));
+            scriptLoaded = true;
+        }
+        String sha = INDEX_SCRIPT.getSha1();
+        byte[] maxLength = String.valueOf(indexMaxLength).getBytes(StandardCharsets.UTF_8);
+        byte[] ttl = String.valueOf(indexTtlMs).getBytes(StandardCharsets.UTF_8);
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (IndexEntry e : entries) {
+                connection.scriptingCommands().evalSha(sha, ReturnType.INTEGER, 1,
+                        e.indexKey(), maxLength, e.recordId(), e.payload(), ttl);
+            }
+            return null;
+        });
+    }
+
+    private void count(List<Object> results) {
+        int rejected = 0;
+        for (Object result : results) {
+            long code = result instanceof Number number ? number.longValue() : 1L;
+            if (code == 1L) {
+                written.increment();
+            } else if (code == 0L) {
+                duplicates.increment();
+            } else {
+                rejected++;
+            }
+        }
+        if (rejected > 0) {
+            outOfOrder.add(rejected);
+            log.warn("[Redis Stream] {} 条消息的 ID 早于赛事索引中最新的消息，未写入回放索引", rejected);
+        }
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("written", written.sum());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("out_of_order", outOfOrder.sum());
+        stats.put("failed", failed.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flush();
+    }
+}
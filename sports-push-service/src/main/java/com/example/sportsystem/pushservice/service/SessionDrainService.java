@@ -0,0 +1,261 @@
+package com.example.sportsystem.pushservice.service;
+
+import com.example.sportsystem.pushservice.handler.WebSocketSessionManager;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.cloud.client.serviceregistry.ServiceRegistry;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点排空服务
+ * 收到 SIGTERM（容器关闭）或管理接口请求后：停止接受新握手、从 Nacos 注销，
+ * 再按配置速率分批向现有会话发送 reconnect 控制帧（携带订阅集合），
+ * 客户端据此在其他节点恢复订阅，避免所有连接同时断开引发重连风暴。
+ * 序列号只在单个节点内有效，不下发续传位置：客户端在新节点订阅时收到的赛事快照即为重新同步的起点。
+ * 会话数超过“速率 × 超时”时按剩余时间提高每批数量，保证超时前全部通知到；
+ * 超时后仍未断开的会话以 GOING_AWAY 关闭
+ */
+@Service
+@Slf4j
+public class SessionDrainService implements SmartLifecycle {
+
+    private final WebSocketSessionManager sessionManager;
+    private final ObjectProvider<ServiceRegistry<Registration>> serviceRegistry;
+    private final ObjectProvider<Registration> registration;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "ws-drain"));
+
+    // 每秒发送的 reconnect 帧数
+    private final int ratePerSecond;
+    // 分批节拍
+    private final long tickMs;
+    // 排空超时，超时后关闭剩余会话（需小于 spring.lifecycle.timeout-per-shutdown-phase）
+    private final long timeoutMs;
+    // 客户端重连延迟的随机上限，reconnect 帧中下发，进一步错开重连时间
+    private final long reconnectJitterMs;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile boolean running;
+    // 待通知的会话
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private volatile ScheduledFuture<?> pacer;
+    private volatile Runnable completion;
+
+    private volatile long drainStartedAt;
+    private volatile long drainFinishedAt;
+    private volatile int drainTotal;
+    private final AtomicLong notified = new AtomicLong();
+    private final AtomicLong forceClosed = new AtomicLong();
+
+    public SessionDrainService(WebSocketSessionManager sessionManager,
+                               ObjectProvider<ServiceRegistry<Registration>> serviceRegistry,
+                               ObjectProvider<Registration> registration,
+                               @Value("${websocket.drain.rate-per-second:500}") int ratePerSecond,
+                               @Value("${websocket.drain.tick-ms:100}") long tickMs,
+                               @Value("${websocket.drain.timeout-ms:25000}") long timeoutMs,
+                               @Value("${websocket.drain.reconnect-jitter-ms:5000}") long reconnectJitterMs) {
+        this.sessionManager = sessionManager;
+        this.serviceRegistry = serviceRegistry;
+        this.registration = registration;
+        this.ratePerSecond = Math.max(1, ratePerSecond);
+        this.tickMs = Math.max(1, tickMs);
+        this.timeoutMs = timeoutMs;
+        this.reconnectJitterMs = Math.max(0, reconnectJitterMs);
+    }
+
+    /**
+     * 是否处于排空状态（排空期间拒绝新握手）
+     * @return 是否排空中
+     */
+    public boolean isDraining() {
+        return draining.get();
+    }
+
+    /**
+     * 开始排空（重复调用无效）
+     * @return 本次调用是否触发了排空
+     */
+    public boolean startDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return false;
+        }
+        deregister();
+        pending.addAll(sessionManager.getSessionIds());
+        drainTotal = pending.size();
+        drainStartedAt = System.currentTimeMillis();
+        log.info("[WebSocket] 开始排空，待迁移会话: {}，速率: {}/s", drainTotal, ratePerSecond);
+
+        if ((long) ratePerSecond * timeoutMs / 1000 < drainTotal) {
+            log.warn("[WebSocket] 排空速率 {}/s 在 {}ms 内无法通知全部 {} 个会话，按剩余时间提高每批数量",
+                    ratePerSecond, timeoutMs, drainTotal);
+        }
+        pacer = scheduler.scheduleAtFixedRate(this::notifyBatch, 0, tickMs, TimeUnit.MILLISECONDS);
+        scheduler.schedule(this::finishDrain, timeoutMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * 从 Nacos 注销，负载均衡不再把新连接路由到本节点
+     */
+    private void deregister() {
+        ServiceRegistry<Registration> registry = serviceRegistry.getIfAvailable();
+        Registration instance = registration.getIfAvailable();
+        if (registry == null || instance == null) {
+            return;
+        }
+        try {
+            registry.deregister(instance);
+            log.info("[WebSocket] 已从注册中心注销: {}:{}", instance.getHost(), instance.getPort());
+        } catch (Exception e) {
+            log.error("[WebSocket] 注册中心注销失败:", e);
+        }
+    }
+
+    /**
+     * 本批通知数量：取配置速率与“剩余会话 / 超时前剩余节拍数”中的较大者，
+     * 保证超时前所有会话都能收到 reconnect 帧，而不是被 GOING_AWAY 直接关闭
+     */
+    private int batchSize() {
+        int rateBatch = (int) Math.max(1, ratePerSecond * tickMs / 1000);
+        long remainingMs = timeoutMs - (System.currentTimeMillis() - drainStartedAt);
+        // 预留一个节拍给客户端收到通知后自行断开
+        long remainingTicks = Math.max(1, remainingMs / tickMs - 1);
+        int deadlineBatch = (int) Math.min(Integer.MAX_VALUE, (pending.size() + remainingTicks - 1) / remainingTicks);
+        return Math.max(rateBatch, deadlineBatch);
+    }
+
+    /**
+     * 向一批会话发送 reconnect 帧，全部会话已通知且已断开时提前结束排空
+     */
+    private void notifyBatch() {
+        try {
+            int batchSize = batchSize();
+            for (int i = 0; i < batchSize; i++) {
+                String sessionId = pending.poll();
+                if (sessionId == null) {
+                    break;
+                }
+                if (sessionManager.sendToSession(sessionId, buildReconnectFrame(sessionId))) {
+                    notified.incrementAndGet();
+                }
+            }
+            if (pending.isEmpty() && sessionManager.getTotalConnectionCount() == 0) {
+                finishDrain();
+            }
+        } catch (Exception e) {
+            log.error("[WebSocket] 发送迁移通知失败:", e);
+        }
+    }
+
+    private String buildReconnectFrame(String sessionId) throws JsonProcessingException {
+        ObjectNode frame = objectMapper.createObjectNode();
+        frame.put("type", "reconnect");
+        frame.put("reason", "drain");
+        frame.put("retry_after_ms", reconnectJitterMs > 0 ? ThreadLocalRandom.current().nextLong(reconnectJitterMs + 1) : 0);
+        sessionManager.getSubscriptions(sessionId).forEach(frame.putArray("subscriptions")::add);
+        return objectMapper.writeValueAsString(frame);
+    }
+
+    /**
+     * 结束排空：关闭剩余会话并通知容器继续关闭流程
+     */
+    private synchronized void finishDrain() {
+        if (drainFinishedAt != 0) {
+            return;
+        }
+        drainFinishedAt = System.currentTimeMillis();
+        if (pacer != null) {
+            pacer.cancel(false);
+        }
+        pending.clear();
+        for (String sessionId : sessionManager.getSessionIds()) {
+            sessionManager.closeSession(sessionId, CloseStatus.GOING_AWAY);
+            forceClosed.incrementAndGet();
+        }
+        log.info("[WebSocket] 排空结束，已通知: {}，强制关闭: {}，耗时: {}ms",
+                notified.get(), forceClosed.get(), drainFinishedAt - drainStartedAt);
+        Runnable callback = completion;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 容器关闭时（默认相位最先停止）排空会话，排空结束后再回调
+     */
+    @Override
+    public void stop(Runnable callback) {
+        running = false;
+        synchronized (this) {
+            if (drainFinishedAt != 0) {
+                callback.run();
+                return;
+            }
+            completion = callback;
+        }
+        startDrain();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("draining", draining.get());
+        stats.put("finished", drainFinishedAt != 0);
+        stats.put("rate_per_second", ratePerSecond);
+        stats.put("total_sessions", drainTotal);
+        stats.put("pending_sessions", pending.size());
+        stats.put("notified", notified.get());
+        stats.put("force_closed", forceClosed.get());
+        stats.put("remaining_connections", sessionManager.getTotalConnectionCount());
+        if (drainStartedAt != 0) {
+            long end = drainFinishedAt != 0 ? drainFinishedAt : System.currentTimeMillis();
+            stats.put("elapsed_ms", end - drainStartedAt);
+        }
+        return stats;
+    }
+}
@@ -1,80 +1,151 @@
 package com.example.sportsystem.pushservice.service;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.connection.stream.StreamOffset;
-import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Redis Stream 消息重放服务
  * 提供接口用于回放历史比分、盘口等数据
+ * <p>
+ * 读取按赛事拆分的索引 Stream（见 {@link MatchStreamIndex}），返回 N 条消息的开销为 O(N)。
+ * 支持按时间范围（毫秒时间戳）过滤，以及基于消息 ID 的游标分页：
+ * before 向前翻页（默认，从最新消息开始），after 向后追赶；下一页游标在响应头 X-Next-Cursor 中返回。
  */
 @RestController
 @RequestMapping("/api/v1/stream/replay")
 @Slf4j
 public class StreamMessageReplayService {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // 单次回放最多返回的条数
+    private static final int MAX_COUNT = 500;
+
     private final StringRedisTemplate redisTemplate;
+    private final MatchStreamIndex matchStreamIndex;
+
+    @Value("${websocket.redis.stream.match-stream}")
+    private String matchStreamKey;
+
+    @Value("${websocket.redis.stream.odds-stream}")
+    private String oddsStreamKey;
 
-    public StreamMessageReplayService(StringRedisTemplate redisTemplate) {
+    public StreamMessageReplayService(StringRedisTemplate redisTemplate, MatchStreamIndex matchStreamIndex) {
         this.redisTemplate = redisTemplate;
+        this.matchStreamIndex = matchStreamIndex;
     }
 
     /**
      * 回放指定赛事的比分历史记录
      * @param matchId 赛事ID
      * @param count 返回条数（可选）
-     * @return 历史消息列表
+     * @param from 起始时间（毫秒时间戳，可选）
+     * @param to 结束时间（毫秒时间戳，可选）
+     * @param before 游标，返回该消息之前的记录（可选）
+     * @param after 游标，返回该消息之后的记录（可选）
+     * @return 历史消息列表（按时间升序）
      */
     @GetMapping("/match/{matchId}")
-    public List<String> replayMatchScoreHistory(@PathVariable String matchId, @RequestParam(required = false) Integer count) {
-        return replayStreamMessages("match_stream", matchId, count != null ? count : 10);
+    public ResponseEntity<List<String>> replayMatchScoreHistory(@PathVariable String matchId,
+                                                                @RequestParam(required = false) Integer count,
+                                                                @RequestParam(required = false) Long from,
+                                                                @RequestParam(required = false) Long to,
+                                                                @RequestParam(required = false) String before,
+                                                                @RequestParam(required = false) String after) {
+        return replayStreamMessages(matchStreamKey, matchId, count, from, to, before, after);
     }
 
     /**
      * 回放指定赛事的盘口历史记录
      * @param matchId 赛事ID
      * @param count 返回条数（可选）
-     * @return 历史消息列表
+     * @param from 起始时间（毫秒时间戳，可选）
+     * @param to 结束时间（毫秒时间戳，可选）
+     * @param before 游标，返回该消息之前的记录（可选）
+     * @param after 游标，返回该消息之后的记录（可选）
+     * @return 历史消息列表（按时间升序）
      */
     @GetMapping("/odds/{matchId}")
-    public List<String> replayOddsUpdateHistory(@PathVariable String matchId, @RequestParam(required = false) Integer count) {
-        return replayStreamMessages("odds_stream", matchId, count != null ? count : 10);
+    public ResponseEntity<List<String>> replayOddsUpdateHistory(@PathVariable String matchId,
+                                                                @RequestParam(required = false) Integer count,
+                                                                @RequestParam(required = false) Long from,
+                                                                @RequestParam(required = false) Long to,
+                                                                @RequestParam(required = false) String before,
+                                                                @RequestParam(required = false) String after) {
+        return replayStreamMessages(oddsStreamKey, matchId, count, from, to, before, after);
     }
 
     /**
-     * 回放 Redis Stream 中的消息
-     * @param streamKey Stream 名称
+     * 回放赛事索引 Stream 中的消息
+     * @param streamKey 全局 Stream 名称
      * @param matchId 赛事ID
      * @param count 获取条数
-     * @return 消息列表
+     * @param from 起始时间
+     * @param to 结束时间
+     * @param before 向前翻页游标
+     * @param after 向后追赶游标
+     * @return 消息列表，还有更多数据时附带下一页游标
      */
-    private List<String> replayStreamMessages(String streamKey, String matchId, int count) {
+    private ResponseEntity<List<String>> replayStreamMessages(String streamKey, String matchId, Integer count,
+                                                              Long from, Long to, String before, String after) {
+        if (before != null && after != null) {
+            return ResponseEntity.badRequest().build();
+        }
+        int limit = Math.min(count != null && count > 0 ? count : 10, MAX_COUNT);
+        String indexKey = matchStreamIndex.indexKey(streamKey, matchId);
+        boolean forward = after != null;
+
+        // 不完整的 ID（仅毫秒时间戳）作为下界时序号取 0，作为上界时序号取最大值
+        Range.Bound<String> lower = after != null ? Range.Bound.exclusive(after)
+                : from != null ? Range.Bound.inclusive(String.valueOf(from)) : Range.Bound.unbounded();
+        Range.Bound<String> upper = before != null ? Range.Bound.exclusive(before)
+                : to != null ? Range.Bound.inclusive(String.valueOf(to)) : Range.Bound.unbounded();
+        // 游标与时间范围同时给出时，时间范围作为另一侧边界
+        if (after != null && to != null) {
+            upper = Range.Bound.inclusive(String.valueOf(to));
+        }
+        if (before != null && from != null) {
+            lower = Range.Bound.inclusive(String.valueOf(from));
+        }
+        Range<String> range = Range.of(lower, upper);
+
         try {
-            // 构建查询条件（示例：查找包含 match_id 的消息）
-            StreamOffset<String> offset = StreamOffset.from(streamKey).equalOrGreater().id(matchId);
-
-            // 查询历史消息
-            List<ObjectRecord<String, String>> records = redisTemplate.opsForStream().read(offset, count);
-
-            if (records != null && !records.isEmpty()) {
-                List<String> messages = new ArrayList<>();
-                for (ObjectRecord<String, String> record : records) {
-                    messages.add(record.getValue());
-                }
-                log.info("[Redis Stream] 成功回放 {} 条消息 from {}@{}", messages.size(), streamKey, matchId);
-                return messages;
+            List<ObjectRecord<String, String>> records = forward
+                    ? redisTemplate.opsForStream().range(String.class, indexKey, range, Limit.limit().count(limit))
+                    : redisTemplate.opsForStream().reverseRange(String.class, indexKey, range, Limit.limit().count(limit));
+            if (records == null || records.isEmpty()) {
+                return ResponseEntity.ok(List.of());
+            }
+
+            List<String> messages = new ArrayList<>(records.size());
+            for (ObjectRecord<String, String> record : records) {
+                messages.add(record.getValue());
+            }
+            if (!forward) {
+                Collections.reverse(messages);
             }
+            log.info("[Redis Stream] 成功回放 {} 条消息 from {}", messages.size(), indexKey);
 
-            return List.of();
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (records.size() == limit) {
+                // 向前翻页时游标为本页最早一条，向后追赶时为本页最新一条
+                response.header(NEXT_CURSOR_HEADER, records.get(records.size() - 1).getId().getValue());
+            }
+            return response.body(messages);
 
         } catch (Exception e) {
             log.error("[Redis Stream] 消息回放失败:", e);
-            return List.of();
+            return ResponseEntity.ok(List.of());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,51 @@
 package com.example.sportsystem.pushservice.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Token 黑名单服务
+ * <p>
+ * 查询结果在本地缓存一段时间：命中黑名单的结果缓存较久，未命中的结果只缓存很短时间，
+ * 重连高峰时同一批 Token 的重复握手无需逐个访问 Redis。本节点加入黑名单的 Token 立即生效，
+ * 其他节点加入的 Token 最迟在未命中缓存过期后生效
  */
 @Service
 public class TokenBlacklistService {
 
+    private static final String KEY_PREFIX = "blacklist:token:";
+
     private final StringRedisTemplate redisTemplate;
 
+    // Token -> 本地缓存的查询结果
+    private final Map<String, CachedResult> localCache = new ConcurrentHashMap<>();
+
+    // 命中黑名单结果的本地缓存时间
+    @Value("${websocket.token-blacklist.positive-ttl-ms:60000}")
+    private long positiveTtlMs;
+
+    // 未命中黑名单结果的本地缓存时间
+    @Value("${websocket.token-blacklist.negative-ttl-ms:5000}")
+    private long negativeTtlMs;
+
+    // 本地缓存最大条数，超出时清理过期条目，仍超出则清空
+    @Value("${websocket.token-blacklist.max-cache-size:100000}")
+    private int maxCacheSize;
+
+    /**
+     * 缓存的查询结果
+     */
+    private record CachedResult(boolean blacklisted, long expiresAtNanos) {
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
     public TokenBlacklistService(StringRedisTemplate redisTemplate) {
         this.redisTemplate = redisTemplate;
     }
@@ -21,7 +56,8 @@ public class TokenBlacklistService {
      * @param expirationInSeconds 过期时间（秒）
      */
     public void addTokenToBlacklist(String token, long expirationInSeconds) {
-        redisTemplate.opsForValue().set("blacklist:token:" + token, "1", expirationInSeconds, java.util.concurrent.TimeUnit.SECONDS);
+        redisTemplate.opsForValue().set(KEY_PREFIX + token, "1", expirationInSeconds, TimeUnit.SECONDS);
+        cache(token, true, Math.min(positiveTtlMs, TimeUnit.SECONDS.toMillis(expirationInSeconds)));
     }
 
     /**
@@ -30,6 +66,26 @@ public class TokenBlacklistService {
      * @return 是否存在
      */
     public boolean isTokenBlacklisted(String token) {
-        return Boolean.TRUE.equals(redisTemplate.hasKey("blacklist:token:" + token));
+        if (token == null) {
+            return false;
+        }
+        CachedResult cached = localCache.get(token);
+        if (cached != null && !cached.isExpired(System.nanoTime())) {
+            return cached.blacklisted();
+        }
+        boolean blacklisted = Boolean.TRUE.equals(redisTemplate.hasKey(KEY_PREFIX + token));
+        cache(token, blacklisted, blacklisted ? positiveTtlMs : negativeTtlMs);
+        return blacklisted;
+    }
+
+    private void cache(String token, boolean blacklisted, long ttlMs) {
+        long now = System.nanoTime();
+        if (localCache.size() >= maxCacheSize) {
+            localCache.values().removeIf(result -> result.isExpired(now));
+            if (localCache.size() >= maxCacheSize) {
+                localCache.clear();
+            }
+        }
+        localCache.put(token, new CachedResult(blacklisted, now + TimeUnit.MILLISECONDS.toNanos(ttlMs)));
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,10 @@
 package com.example.sportsystem.pushservice.service;
 
+import com.example.sportsystem.pushservice.handler.CompressionSampler;
+import com.example.sportsystem.pushservice.handler.MatchSnapshotCache;
 import com.example.sportsystem.pushservice.handler.WebSocketSessionManager;
+import com.example.sportsystem.pushservice.listener.DeliveryRetryScheduler;
+import com.example.sportsystem.pushservice.listener.StreamPendingReclaimer;
 import lombok.AllArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -17,6 +21,13 @@ import java.util.Map;
 public class WebSocketStatisticsService {
 
     private final WebSocketSessionManager sessionManager;
+    private final DeliveryRetryScheduler retryScheduler;
+    private final StreamPendingReclaimer pendingReclaimer;
+    private final MatchSnapshotCache snapshotCache;
+    private final CompressionSampler compressionSampler;
+    private final HandshakeAdmissionService admissionService;
+    private final SessionDrainService drainService;
+    private final MatchStreamIndex matchStreamIndex;
 
     /**
      * 获取当前 WebSocket 统计信息
@@ -28,6 +39,15 @@ public class WebSocketStatisticsService {
         stats.put("total_connections", sessionManager.getTotalConnectionCount());
         stats.put("active_subscribers", sessionManager.getSubscribedMatchCount());
         stats.put("match_subscriptions", sessionManager.getMatchSubscriptionStats());
+        stats.put("outbound_queue", sessionManager.getOutboundQueueStats());
+        stats.put("delivery_retry", retryScheduler.getStats());
+        stats.put("stream_pending", pendingReclaimer.getStats());
+        stats.put("snapshot_matches", snapshotCache.size());
+        stats.put("compression", compressionSampler.getStats());
+        stats.put("heartbeat", sessionManager.getHeartbeatStats());
+        stats.put("admission", admissionService.getStats());
+        stats.put("drain", drainService.getStats());
+        stats.put("replay_index", matchStreamIndex.getStats());
         return stats;
     }
 }
\ No newline at end of file
@@ -2,8 +2,10 @@ package com.example.sportsystem.storageservice;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class SportsStorageServiceApplication {
     public static void main(String[] args) {
         SpringApplication.run(SportsStorageServiceApplication.class, args);
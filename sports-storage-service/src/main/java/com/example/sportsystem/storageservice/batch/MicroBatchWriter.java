@@ -0,0 +1,208 @@
+package com.example.sportsystem.storageservice.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 微批写入器
+ * 消费线程提交记录后阻塞等待，写线程按数量或等待时间凑批，在一个事务内批量写入并提交，
+ * 提交成功后才唤醒消费线程返回，从而保证 RocketMQ 位点只在数据落库后推进；
+ * 写入失败时整批消费线程抛出异常，由 RocketMQ 重新投递。
+ * 顺序消费时可用 writeAll 一次提交同一队列的多条记录，避免每个队列只有一条记录在等待提交
+ * @param <T> 记录类型
+ */
+@Slf4j
+public final class MicroBatchWriter<T> implements AutoCloseable {
+
+    private final String name;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final long commitTimeoutMs;
+    private final TransactionTemplate transactionTemplate;
+    private final Consumer<List<T>> batchWriter;
+
+    private final BlockingQueue<Pending<T>> queue;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+
+    /**
+     * 待写入记录及其提交结果
+     */
+    private record Pending<T>(T item, CompletableFuture<Void> committed) {
+    }
+
+    /**
+     * @param name 写入器名称（用于线程名与日志）
+     * @param batchSize 单批最大记录数
+     * @param maxWaitMs 凑批最长等待时间
+     * @param queueCapacity 待写入队列容量（满时提交方阻塞，形成背压）
+     * @param commitTimeoutMs 提交方等待落库的超时时间
+     * @param transactionTemplate 事务模板
+     * @param batchWriter 批量写入逻辑（在事务内执行）
+     */
+    public MicroBatchWriter(String name, int batchSize, long maxWaitMs, int queueCapacity, long commitTimeoutMs,
+                            TransactionTemplate transactionTemplate, Consumer<List<T>> batchWriter) {
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.commitTimeoutMs = commitTimeoutMs;
+        this.transactionTemplate = transactionTemplate;
+        this.batchWriter = batchWriter;
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, queueCapacity));
+        this.writerThread = new Thread(this::run, "batch-writer-" + name);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 提交记录并阻塞直到所在批次提交
+     * @param item 记录
+     * @throws IllegalStateException 写入失败、超时或写入器已关闭
+     */
+    public void write(T item) {
+        await(List.of(submit(item)));
+    }
+
+    /**
+     * 提交一组记录并阻塞直到全部提交（记录可能分属多个批次）
+     * @param items 记录
+     * @throws IllegalStateException 写入失败、超时或写入器已关闭
+     */
+    public void writeAll(List<T> items) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(submit(item));
+        }
+        await(futures);
+    }
+
+    private CompletableFuture<Void> submit(T item) {
+        if (!running) {
+            throw new IllegalStateException("[" + name + "] 批量写入器已关闭");
+        }
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        try {
+            queue.put(new Pending<>(item, committed));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("[" + name + "] 等待写入队列被中断", e);
+        }
+        return committed;
+    }
+
+    private void await(List<CompletableFuture<Void>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("[" + name + "] 等待批量提交被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("[" + name + "] 批量写入失败", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("[" + name + "] 等待批量提交超时", e);
+        }
+    }
+
+    private void run() {
+        List<Pending<T>> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 达到批量大小或等待超时即提交
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending<T> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending<T>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T> pending : batch) {
+            items.add(pending.item());
+        }
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(status -> batchWriter.accept(items));
+            commitNanos.add(System.nanoTime() - start);
+            batches.increment();
+            rows.add(items.size());
+            batch.forEach(pending -> pending.committed().complete(null));
+        } catch (Exception e) {
+            failedBatches.increment();
+            log.error("[{}] 批量写入失败，{} 条记录将由 RocketMQ 重新投递:", name, items.size(), e);
+            batch.forEach(pending -> pending.committed().completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long batchCount = batches.sum();
+        stats.put("batches", batchCount);
+        stats.put("rows", rows.sum());
+        stats.put("failed_batches", failedBatches.sum());
+        stats.put("avg_batch_size", batchCount > 0 ? (double) rows.sum() / batchCount : 0);
+        stats.put("avg_commit_micros", batchCount > 0 ? commitNanos.sum() / batchCount / 1000 : 0);
+        stats.put("queued", queue.size());
+        return stats;
+    }
+
+    /**
+     * 停止接收新记录，写完队列中剩余记录后退出
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending<T> pending;
+        while ((pending = queue.poll()) != null) {
+            pending.committed().completeExceptionally(new IllegalStateException("[" + name + "] 批量写入器已关闭"));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.sportsystem.storageservice.batch;
+
+import com.example.sportsystem.common.entity.MatchScoreEntity;
+import com.example.sportsystem.storageservice.cache.ScoreVersionCache;
+import com.example.sportsystem.storageservice.repository.MatchBatchRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 比分异步合并写库缓冲
+ * 比分先写入 Redis 当前状态缓存，数据库写入在此按赛事合并（只保留最高版本），按固定间隔批量提交；
+ * 写入失败的比分重新合并回缓冲，下次提交时重试。进程异常退出时未提交的比分由一致性检查任务从 Redis 补写
+ */
+@Component
+@Slf4j
+public class ScoreWriteBehindBuffer {
+
+    private final MatchBatchRepository batchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ScoreVersionCache scoreVersionCache;
+
+    // 赛事ID -> 待写入的最新比分
+    private final Map<String, MatchScoreEntity> pending = new ConcurrentHashMap<>();
+
+    // 单批最大记录数
+    @Value("${storage.batch.size:500}")
+    private int batchSize;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    public ScoreWriteBehindBuffer(MatchBatchRepository batchRepository, TransactionTemplate transactionTemplate,
+                                  ScoreVersionCache scoreVersionCache) {
+        this.batchRepository = batchRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.scoreVersionCache = scoreVersionCache;
+    }
+
+    /**
+     * 登记待写库的比分，同一赛事只保留版本最高的一条
+     * @param score 比分
+     */
+    public void submit(MatchScoreEntity score) {
+        submitted.increment();
+        pending.merge(score.getMatchId(), score, (current, candidate) -> {
+            coalesced.increment();
+            // 同版本为重复投递，保留先到的一条，与数据库、缓存的版本条件一致
+            return candidate.getVersion() > current.getVersion() ? candidate : current;
+        });
+    }
+
+    /**
+     * 赛事是否有尚未写库的比分
+     * @param matchId 赛事ID
+     * @return 是否存在
+     */
+    public boolean isPending(String matchId) {
+        return pending.containsKey(matchId);
+    }
+
+    /**
+     * 按固定间隔分批提交
+     * 每次只处理进入时已存在的赛事，持续写入期间新到的赛事留到下一次，提交线程不会被单次 flush 长期占用
+     */
+    @Scheduled(fixedDelayString = "${storage.write-behind.flush-interval-ms:200}")
+    public synchronized void flush() {
+        List<String> matchIds = new ArrayList<>(pending.keySet());
+        for (int from = 0; from < matchIds.size(); from += batchSize) {
+            List<MatchScoreEntity> batch = new ArrayList<>(Math.min(batchSize, matchIds.size() - from));
+            for (String matchId : matchIds.subList(from, Math.min(from + batchSize, matchIds.size()))) {
+                MatchScoreEntity score = pending.get(matchId);
+                // 条件移除：期间被更新版本替换的比分留在缓冲中，由下一次 flush 写入
+                if (score != null && pending.remove(matchId, score)) {
+                    batch.add(score);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> batchRepository.batchUpsertScores(batch));
+                batch.forEach(scoreVersionCache::markWritten);
+                written.add(batch.size());
+            } catch (Exception e) {
+                failedFlushes.increment();
+                log.error("[MySQL] 比分批量写入失败，{} 条记录下次重试:", batch.size(), e);
+                batch.forEach(score -> pending.merge(score.getMatchId(), score,
+                        (current, failed) -> current.getVersion() >= failed.getVersion() ? current : failed));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pending", pending.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("written", written.sum());
+        stats.put("failed_flushes", failedFlushes.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.sportsystem.storageservice.cache;
+
+import com.example.sportsystem.common.entity.MatchOddsEntity;
+import com.example.sportsystem.common.entity.MatchScoreEntity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 赛事当前状态的 Redis 缓存
+ * 每场赛事一个 Hash（match:state:{matchId}）：比分字段按版本条件更新，盘口以 odds:{公司}:{玩法} 为字段按时间戳条件更新，
+ * 乱序到达的旧数据不会覆盖新状态。进行中的赛事每次写入刷新过期时间，已结束的赛事改为较短的过期时间后自动淘汰
+ */
+@Component
+@Slf4j
+public class MatchStateCache {
+
+    public static final String KEY_PREFIX = "match:state:";
+    private static final String ODDS_FIELD_PREFIX = "odds:";
+
+    // 版本高于已缓存版本时写入比分（同版本为无操作），并按是否结束设置过期时间
+    private static final DefaultRedisScript<Long> SCORE_SCRIPT = new DefaultRedisScript<>(
+            "local cur = redis.call('HGET', KEYS[1], 'version') " +
+            "if cur and tonumber(cur) >= tonumber(ARGV[1]) then return 0 end " +
+            "redis.call('HSET', KEYS[1], 'version', ARGV[1], 'home_score', ARGV[2], 'away_score', ARGV[3], " +
+            "'minute', ARGV[4], 'period', ARGV[5], 'status', ARGV[6], 'update_time', ARGV[7], 'finished', ARGV[8]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[9]) " +
+            "return 1", Long.class);
+
+    // 时间戳不早于已缓存盘口时写入，已结束赛事不再延长过期时间
+    private static final DefaultRedisScript<Long> ODDS_SCRIPT = new DefaultRedisScript<>(
+            "local cur = redis.call('HGET', KEYS[1], ARGV[1]) " +
+            "if cur then " +
+            "  local ok, old = pcall(cjson.decode, cur) " +
+            "  if ok and tonumber(old.ts) > tonumber(ARGV[2]) then return 0 end " +
+            "end " +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[3]) " +
+            "if redis.call('HGET', KEYS[1], 'finished') ~= '1' then redis.call('PEXPIRE', KEYS[1], ARGV[4]) end " +
+            "return 1", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 一致性检查的扫描游标（遍历完一轮后关闭，下次扫描重新创建）
+    private Cursor<String> scanCursor;
+
+    // 进行中赛事的缓存时间（每次写入刷新）
+    @Value("${storage.state-cache.active-ttl-ms:86400000}")
+    private long activeTtlMs;
+
+    // 已结束赛事的缓存时间
+    @Value("${storage.state-cache.finished-ttl-ms:600000}")
+    private long finishedTtlMs;
+
+    // 视为已结束的比赛状态
+    @Value("${storage.state-cache.finished-statuses:FINISHED,ENDED,FT,CANCELLED}")
+    private Set<String> finishedStatuses;
+
+    public MatchStateCache(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 缓存 Key
+     * @param matchId 赛事ID
+     * @return Key
+     */
+    public static String key(String matchId) {
+        return KEY_PREFIX + matchId;
+    }
+
+    /**
+     * 写入比分（版本不高于已缓存版本时不生效）
+     * @param score 比分
+     * @return 是否写入
+     */
+    public boolean updateScore(MatchScoreEntity score) {
+        boolean finished = isFinished(score.getStatus());
+        Long updated = redisTemplate.execute(SCORE_SCRIPT, List.of(key(score.getMatchId())),
+                String.valueOf(score.getVersion()),
+                String.valueOf(score.getHomeScore()),
+                String.valueOf(score.getAwayScore()),
+                String.valueOf(score.getMinute()),
+                nullToEmpty(score.getPeriod()),
+                nullToEmpty(score.getStatus()),
+                score.getUpdateTime() != null ? score.getUpdateTime().toString() : "",
+                finished ? "1" : "0",
+                String.valueOf(finished ? finishedTtlMs : activeTtlMs));
+        return updated != null && updated == 1L;
+    }
+
+    /**
+     * 写入当前盘口（时间戳更早时不生效）
+     * @param odds 盘口
+     * @return 是否写入
+     */
+    public boolean updateOdds(MatchOddsEntity odds) {
+        long ts = odds.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+        ObjectNode value = objectMapper.createObjectNode();
+        value.put("bookmaker", odds.getBookmaker());
+        value.put("odds_type", odds.getOddsType());
+        value.put("handicap", odds.getHandicap());
+        value.put("home_odds", odds.getHomeOdds());
+        value.put("away_odds", odds.getAwayOdds());
+        value.put("ts", ts);
+        Long updated = redisTemplate.execute(ODDS_SCRIPT, List.of(key(odds.getMatchId())),
+                oddsField(odds), String.valueOf(ts), value.toString(), String.valueOf(activeTtlMs));
+        return updated != null && updated == 1L;
+    }
+
+    /**
+     * 读取缓存的比分
+     * @param matchId 赛事ID
+     * @return 比分（未缓存时返回 null）
+     */
+    public MatchScoreEntity getScore(String matchId) {
+        Map<Object, Object> hash = redisTemplate.opsForHash().entries(key(matchId));
+        if (!hash.containsKey("version")) {
+            return null;
+        }
+        String updateTime = (String) hash.get("update_time");
+        return new MatchScoreEntity(
+                matchId,
+                Integer.parseInt((String) hash.get("home_score")),
+                Integer.parseInt((String) hash.get("away_score")),
+                Integer.parseInt((String) hash.get("minute")),
+                emptyToNull((String) hash.get("period")),
+                emptyToNull((String) hash.get("status")),
+                Long.parseLong((String) hash.get("version")),
+                updateTime == null || updateTime.isEmpty() ? null : LocalDateTime.parse(updateTime));
+    }
+
+    /**
+     * 以管道方式批量读取缓存的比分版本
+     * @param matchIds 赛事ID
+     * @return 赛事ID -> 版本（未缓存比分的赛事不在结果中）
+     */
+    public Map<String, Long> getScoreVersions(List<String> matchIds) {
+        List<Object> versions = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] field = "version".getBytes(StandardCharsets.UTF_8);
+            for (String matchId : matchIds) {
+                connection.hashCommands().hGet(key(matchId).getBytes(StandardCharsets.UTF_8), field);
+            }
+            return null;
+        });
+        Map<String, Long> result = new HashMap<>();
+        for (int i = 0; i < matchIds.size(); i++) {
+            Object version = versions.get(i);
+            if (version != null) {
+                result.put(matchIds.get(i), Long.valueOf(version.toString()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取缓存的当前盘口
+     * @param matchId 赛事ID
+     * @return 当前盘口（未缓存时返回空列表）
+     */
+    public List<MatchOddsEntity> getOdds(String matchId) {
+        List<MatchOddsEntity> result = new ArrayList<>();
+        redisTemplate.opsForHash().entries(key(matchId)).forEach((field, value) -> {
+            if (!((String) field).startsWith(ODDS_FIELD_PREFIX)) {
+                return;
+            }
+            try {
+                JsonNode node = objectMapper.readTree((String) value);
+                result.add(new MatchOddsEntity(
+                        matchId,
+                        node.path("bookmaker").asText(null),
+                        node.path("odds_type").asText(null),
+                        node.path("handicap").asText(null),
+                        node.path("home_odds").asDouble(),
+                        node.path("away_odds").asDouble(),
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(node.path("ts").asLong()), ZoneOffset.UTC)));
+            } catch (JsonProcessingException e) {
+                log.warn("[Redis] 无法解析缓存的盘口: {} {}", matchId, field);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 从上次停止的位置继续扫描缓存中的赛事ID（游标跨调用保留，遍历完一轮后下次调用从头开始），
+     * 赛事数超过单次上限时每次检查不同的赛事，而不是总检查键空间开头的同一批
+     * @param limit 最多返回的数量
+     * @return 赛事ID列表
+     */
+    public synchronized List<String> scanMatchIds(int limit) {
+        List<String> matchIds = new ArrayList<>();
+        if (scanCursor == null) {
+            ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(Math.max(100, limit)).build();
+            scanCursor = redisTemplate.scan(options);
+        }
+        try {
+            while (scanCursor.hasNext() && matchIds.size() < limit) {
+                matchIds.add(scanCursor.next().substring(KEY_PREFIX.length()));
+            }
+            if (!scanCursor.hasNext()) {
+                closeScanCursor();
+            }
+        } catch (RuntimeException e) {
+            // 连接异常后游标不可继续使用，下次从头扫描
+            closeScanCursor();
+            throw e;
+        }
+        return matchIds;
+    }
+
+    @PreDestroy
+    public synchronized void closeScanCursor() {
+        if (scanCursor != null) {
+            scanCursor.close();
+            scanCursor = null;
+        }
+    }
+
+    /**
+     * 是否为已结束的比赛状态
+     * @param status 比赛状态
+     * @return 是否已结束
+     */
+    public boolean isFinished(String status) {
+        return status != null && finishedStatuses.contains(status);
+    }
+
+    private static String oddsField(MatchOddsEntity odds) {
+        return ODDS_FIELD_PREFIX + nullToEmpty(odds.getBookmaker()) + ":" + nullToEmpty(odds.getOddsType());
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.sportsystem.storageservice.cache;
+
+import com.example.sportsystem.common.entity.MatchScoreEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每场赛事最近一次落库的比分版本
+ * 写库前跳过版本更旧（乱序或重投的旧消息）以及版本相同（重复投递）的比分，与数据库、缓存的版本条件一致；
+ * 只在批次提交后登记，写入失败的消息重投时不会被误判为重复。
+ * 本地缓存只做预过滤，并发写入时的最终保护由数据库的版本条件更新完成
+ */
+@Component
+public class ScoreVersionCache {
+
+    // 赛事ID -> 最近落库的版本
+    private final Map<String, Long> lastWritten = new ConcurrentHashMap<>();
+
+    // 缓存的最大赛事数，超出时清空（之后由数据库版本条件兜底）
+    @Value("${storage.score-version.max-matches:100000}")
+    private int maxMatches;
+
+    private final LongAdder skippedStale = new LongAdder();
+    private final LongAdder skippedDuplicate = new LongAdder();
+
+    /**
+     * 判断比分是否需要写库
+     * @param score 比分
+     * @return 版本高于已落库版本时返回 true
+     */
+    public boolean shouldWrite(MatchScoreEntity score) {
+        Long seen = lastWritten.get(score.getMatchId());
+        if (seen == null || score.getVersion() > seen) {
+            return true;
+        }
+        if (score.getVersion() < seen) {
+            skippedStale.increment();
+        } else {
+            skippedDuplicate.increment();
+        }
+        return false;
+    }
+
+    /**
+     * 登记已提交的比分（只保留更高的版本）
+     * @param score 比分
+     */
+    public void markWritten(MatchScoreEntity score) {
+        if (lastWritten.size() >= maxMatches && !lastWritten.containsKey(score.getMatchId())) {
+            lastWritten.clear();
+        }
+        lastWritten.merge(score.getMatchId(), score.getVersion(), Math::max);
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("tracked_matches", lastWritten.size());
+        stats.put("skipped_stale", skippedStale.sum());
+        stats.put("skipped_duplicate", skippedDuplicate.sum());
+        return stats;
+    }
+}
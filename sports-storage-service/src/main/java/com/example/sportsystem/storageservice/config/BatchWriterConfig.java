@@ -0,0 +1,39 @@
+package com.example.sportsystem.storageservice.config;
+
+import com.example.sportsystem.common.entity.MatchOddsEntity;
+import com.example.sportsystem.storageservice.batch.MicroBatchWriter;
+import com.example.sportsystem.storageservice.repository.OddsHistoryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 盘口历史的微批写入器配置（比分经 Redis 缓存异步合并写库，见 ScoreWriteBehindBuffer）
+ */
+@Configuration
+public class BatchWriterConfig {
+
+    // 单批最大记录数
+    @Value("${storage.batch.size:500}")
+    private int batchSize;
+
+    // 凑批最长等待时间
+    @Value("${storage.batch.max-wait-ms:20}")
+    private long maxWaitMs;
+
+    // 待写入队列容量
+    @Value("${storage.batch.queue-capacity:5000}")
+    private int queueCapacity;
+
+    // 消费线程等待落库的超时时间，超时后消息由 RocketMQ 重新投递
+    @Value("${storage.batch.commit-timeout-ms:10000}")
+    private long commitTimeoutMs;
+
+    @Bean(destroyMethod = "close")
+    public MicroBatchWriter<MatchOddsEntity> oddsBatchWriter(TransactionTemplate transactionTemplate,
+                                                             OddsHistoryRepository oddsHistoryRepository) {
+        return new MicroBatchWriter<>("odds", batchSize, maxWaitMs, queueCapacity, commitTimeoutMs,
+                transactionTemplate, oddsHistoryRepository::batchAppend);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.sportsystem.storageservice.controller;
+
+import com.example.sportsystem.common.entity.MatchOddsEntity;
+import com.example.sportsystem.common.entity.MatchScoreEntity;
+import com.example.sportsystem.storageservice.batch.MicroBatchWriter;
+import com.example.sportsystem.storageservice.batch.ScoreWriteBehindBuffer;
+import com.example.sportsystem.storageservice.cache.MatchStateCache;
+import com.example.sportsystem.storageservice.cache.ScoreVersionCache;
+import com.example.sportsystem.storageservice.job.MatchStateConsistencyJob;
+import com.example.sportsystem.storageservice.listener.OddsUpdateConsumer;
+import com.example.sportsystem.storageservice.repository.MatchBatchRepository;
+import com.example.sportsystem.storageservice.repository.OddsHistoryRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 赛事当前状态查询接口（经网关 /api/storage/** 暴露）
+ * 优先读取 Redis 缓存，未命中时回源数据库并回填缓存
+ */
+@RestController
+@RequestMapping("/api/storage")
+@AllArgsConstructor
+public class MatchStateController {
+
+    // 价格走势查询的最大时间跨度（分钟）
+    private static final int MAX_HISTORY_MINUTES = 1440;
+
+    private final MatchStateCache matchStateCache;
+    private final MatchBatchRepository batchRepository;
+    private final OddsHistoryRepository oddsHistoryRepository;
+    private final ScoreWriteBehindBuffer writeBehindBuffer;
+    private final ScoreVersionCache scoreVersionCache;
+    private final MicroBatchWriter<MatchOddsEntity> oddsBatchWriter;
+    private final MatchStateConsistencyJob consistencyJob;
+    private final OddsUpdateConsumer oddsUpdateConsumer;
+
+    /**
+     * 查询赛事当前比分
+     * @param matchId 赛事ID
+     * @return 比分
+     */
+    @GetMapping("/matches/{matchId}/score")
+    public ResponseEntity<MatchScoreEntity> getScore(@PathVariable String matchId) {
+        MatchScoreEntity score = matchStateCache.getScore(matchId);
+        if (score == null) {
+            score = batchRepository.findScore(matchId);
+            if (score == null) {
+                return ResponseEntity.notFound().build();
+            }
+            matchStateCache.updateScore(score);
+        }
+        return ResponseEntity.ok(score);
+    }
+
+    /**
+     * 查询赛事各公司/玩法的当前盘口
+     * @param matchId 赛事ID
+     * @return 当前盘口
+     */
+    @GetMapping("/matches/{matchId}/odds")
+    public List<MatchOddsEntity> getOdds(@PathVariable String matchId) {
+        List<MatchOddsEntity> odds = matchStateCache.getOdds(matchId);
+        if (odds.isEmpty()) {
+            odds = oddsHistoryRepository.findCurrent(matchId);
+            odds.forEach(matchStateCache::updateOdds);
+        }
+        return odds;
+    }
+
+    /**
+     * 查询赛事最近一段时间的价格走势
+     * @param matchId 赛事ID
+     * @param minutes 时间跨度（分钟，默认 60）
+     * @return 盘口历史（按时间升序）
+     */
+    @GetMapping("/matches/{matchId}/odds/history")
+    public List<MatchOddsEntity> getOddsHistory(@PathVariable String matchId,
+                                                @RequestParam(defaultValue = "60") int minutes) {
+        LocalDateTime to = LocalDateTime.now(ZoneOffset.UTC);
+        LocalDateTime from = to.minusMinutes(Math.max(1, Math.min(minutes, MAX_HISTORY_MINUTES)));
+        return oddsHistoryRepository.findMovement(matchId, from, to);
+    }
+
+    /**
+     * 写入链路统计
+     * @return 统计数据
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("score_write_behind", writeBehindBuffer.getStats());
+        stats.put("score_version", scoreVersionCache.getStats());
+        stats.put("odds_batch", oddsBatchWriter.getStats());
+        stats.put("consistency", consistencyJob.getStats());
+        stats.put("odds_consumer", oddsUpdateConsumer.getStats());
+        return stats;
+    }
+}
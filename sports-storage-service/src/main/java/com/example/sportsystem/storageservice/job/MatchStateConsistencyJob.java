@@ -0,0 +1,102 @@
+package com.example.sportsystem.storageservice.job;
+
+import com.example.sportsystem.common.entity.MatchScoreEntity;
+import com.example.sportsystem.storageservice.batch.ScoreWriteBehindBuffer;
+import com.example.sportsystem.storageservice.cache.MatchStateCache;
+import com.example.sportsystem.storageservice.repository.MatchBatchRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redis 当前状态与数据库的一致性检查任务
+ * 按批比较缓存与数据库中的比分版本：缓存更新而数据库落后（且写库缓冲中没有待写数据，如进程异常退出后）时从缓存补写数据库；
+ * 数据库更新而缓存落后时用数据库刷新缓存。
+ * 每次最多检查 max-matches-per-run 场，扫描游标跨次保留，赛事较多时分多次轮转覆盖全部赛事
+ */
+@Component
+@Slf4j
+public class MatchStateConsistencyJob {
+
+    private final MatchStateCache matchStateCache;
+    private final MatchBatchRepository batchRepository;
+    private final ScoreWriteBehindBuffer writeBehindBuffer;
+
+    // 每次检查的最大赛事数（超出部分由后续几次检查接着扫描）
+    @Value("${storage.consistency.max-matches-per-run:10000}")
+    private int maxMatchesPerRun;
+
+    // 每批比较的赛事数
+    @Value("${storage.consistency.batch-size:500}")
+    private int batchSize;
+
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong repairedDatabase = new AtomicLong();
+    private final AtomicLong refreshedCache = new AtomicLong();
+
+    public MatchStateConsistencyJob(MatchStateCache matchStateCache, MatchBatchRepository batchRepository,
+                                    ScoreWriteBehindBuffer writeBehindBuffer) {
+        this.matchStateCache = matchStateCache;
+        this.batchRepository = batchRepository;
+        this.writeBehindBuffer = writeBehindBuffer;
+    }
+
+    /**
+     * 每分钟检查一次
+     */
+    @Scheduled(fixedDelayString = "${storage.consistency.interval-ms:60000}")
+    public void check() {
+        try {
+            List<String> matchIds = matchStateCache.scanMatchIds(maxMatchesPerRun);
+            int repaired = 0;
+            int refreshed = 0;
+            for (int from = 0; from < matchIds.size(); from += batchSize) {
+                List<String> chunk = matchIds.subList(from, Math.min(from + batchSize, matchIds.size()));
+                Map<String, Long> cacheVersions = matchStateCache.getScoreVersions(chunk);
+                Map<String, Long> dbVersions = batchRepository.findVersions(cacheVersions.keySet());
+                for (Map.Entry<String, Long> entry : cacheVersions.entrySet()) {
+                    String matchId = entry.getKey();
+                    Long dbVersion = dbVersions.get(matchId);
+                    if ((dbVersion == null || entry.getValue() > dbVersion) && !writeBehindBuffer.isPending(matchId)) {
+                        MatchScoreEntity score = matchStateCache.getScore(matchId);
+                        if (score != null) {
+                            writeBehindBuffer.submit(score);
+                            repaired++;
+                        }
+                    } else if (dbVersion != null && dbVersion > entry.getValue()) {
+                        MatchScoreEntity score = batchRepository.findScore(matchId);
+                        if (score != null && matchStateCache.updateScore(score)) {
+                            refreshed++;
+                        }
+                    }
+                }
+                checked.addAndGet(cacheVersions.size());
+            }
+            repairedDatabase.addAndGet(repaired);
+            refreshedCache.addAndGet(refreshed);
+            if (repaired > 0 || refreshed > 0) {
+                log.warn("[Redis] 一致性检查：补写数据库 {} 场，刷新缓存 {} 场", repaired, refreshed);
+            }
+        } catch (Exception e) {
+            log.error("[Redis] 一致性检查失败:", e);
+        }
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("checked", checked.get());
+        stats.put("repaired_database", repairedDatabase.get());
+        stats.put("refreshed_cache", refreshedCache.get());
+        return stats;
+    }
+}
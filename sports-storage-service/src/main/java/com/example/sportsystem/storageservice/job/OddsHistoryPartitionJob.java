@@ -0,0 +1,114 @@
+package com.example.sportsystem.storageservice.job;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * 盘口历史表分区维护任务
+ * 提前创建未来若干天的日分区（从空的 pmax 分区拆分，无数据搬迁），
+ * 并整块删除超过保留天数的分区，避免逐行 DELETE 带来的写放大
+ */
+@Component
+@Slf4j
+public class OddsHistoryPartitionJob {
+
+    private static final String TABLE = "match_odds_history";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    private static final String SELECT_PARTITIONS_SQL =
+            "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+            "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // 提前创建的天数
+    @Value("${storage.odds-history.precreate-days:7}")
+    private int precreateDays;
+
+    // 历史数据保留天数
+    @Value("${storage.odds-history.retention-days:90}")
+    private int retentionDays;
+
+    public OddsHistoryPartitionJob(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 每小时检查一次分区（操作幂等，启动后立即执行一次）
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${storage.odds-history.partition-check-ms:3600000}")
+    public void maintainPartitions() {
+        try {
+            TreeSet<LocalDate> days = loadPartitionDays();
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            createPartitions(days, today);
+            dropPartitions(days, today.minusDays(retentionDays));
+        } catch (Exception e) {
+            log.error("[MySQL] 盘口历史分区维护失败:", e);
+        }
+    }
+
+    /**
+     * 读取已有的日分区
+     */
+    private TreeSet<LocalDate> loadPartitionDays() {
+        List<String> names = jdbcTemplate.queryForList(SELECT_PARTITIONS_SQL, String.class, TABLE);
+        TreeSet<LocalDate> days = new TreeSet<>();
+        for (String name : names) {
+            try {
+                days.add(LocalDate.parse(name, PARTITION_NAME));
+            } catch (DateTimeParseException e) {
+                // pmax 不是日分区
+            }
+        }
+        return days;
+    }
+
+    /**
+     * 从 pmax 拆分出缺失的日分区（只能在最后一个日分区之后追加）
+     */
+    private void createPartitions(TreeSet<LocalDate> days, LocalDate today) {
+        LocalDate last = today.plusDays(precreateDays);
+        LocalDate day = days.isEmpty() ? today : days.last().plusDays(1);
+        if (day.isBefore(today)) {
+            day = today;
+        }
+        StringBuilder partitions = new StringBuilder();
+        int created = 0;
+        for (; !day.isAfter(last); day = day.plusDays(1)) {
+            partitions.append("PARTITION ").append(day.format(PARTITION_NAME))
+                    .append(" VALUES LESS THAN ('").append(day.plusDays(1)).append("'), ");
+            created++;
+        }
+        if (created == 0) {
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " REORGANIZE PARTITION pmax INTO (" + partitions +
+                "PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+        log.info("[MySQL] 已创建 {} 个盘口历史分区，最新至 {}", created, last);
+    }
+
+    /**
+     * 删除早于保留期限的日分区
+     */
+    private void dropPartitions(TreeSet<LocalDate> days, LocalDate cutoff) {
+        List<String> expired = days.headSet(cutoff).stream()
+                .map(day -> day.format(PARTITION_NAME))
+                .toList();
+        if (expired.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + String.join(", ", expired));
+        log.info("[MySQL] 已删除 {} 个过期盘口历史分区: {}", expired.size(), expired);
+    }
+}
@@ -1,25 +1,44 @@
 package com.example.sportsystem.storageservice.listener;
 
+import com.example.sportsystem.common.entity.MatchScoreEntity;
 import com.example.sportsystem.common.model.MatchScoreMessage;
-import com.example.sportsystem.storageservice.repository.MatchScoreRepository;
+import com.example.sportsystem.storageservice.batch.ScoreWriteBehindBuffer;
+import com.example.sportsystem.storageservice.cache.MatchStateCache;
+import com.example.sportsystem.storageservice.cache.ScoreVersionCache;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.spring.annotation.ConsumeMode;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 /**
  * 比赛比分消息消费者
- * 监听来自 RocketMQ 的比分更新事件并持久化到数据库
+ * 监听来自 RocketMQ 的比分更新事件：先同步写入 Redis 当前状态缓存，再交由写库缓冲按赛事合并后异步批量写库；
+ * Redis 写入失败时抛出异常，挂起当前队列稍后重新消费。版本更旧或重复的比分直接跳过。
+ * 按队列顺序消费：生产端按赛事ID选择队列，同一赛事的比分按发送顺序处理，不同队列的赛事并行
  */
 @Component
-@RocketMQMessageListener(topic = "MATCH_SCORE_TOPIC", consumerGroup = "match-score-consumer-group")
+@RocketMQMessageListener(topic = "MATCH_SCORE_TOPIC", consumerGroup = "match-score-consumer-group",
+        consumeMode = ConsumeMode.ORDERLY)
 @Slf4j
-public class MatchScoreConsumer implements RocketMQListener<MatchScoreMessage> {
+public class MatchScoreConsumer implements RocketMQListener<MatchScoreMessage>, RocketMQPushConsumerLifecycleListener {
 
-    private final MatchScoreRepository matchScoreRepository;
+    private final MatchStateCache matchStateCache;
+    private final ScoreWriteBehindBuffer writeBehindBuffer;
+    private final ScoreVersionCache scoreVersionCache;
 
-    public MatchScoreConsumer(MatchScoreRepository matchScoreRepository) {
-        this.matchScoreRepository = matchScoreRepository;
+    // 消费线程数（顺序消费时同一队列同一时刻只有一个线程处理，超过队列数的线程不会被用到）
+    @Value("${storage.consumer.score-threads:64}")
+    private int consumeThreads;
+
+    public MatchScoreConsumer(MatchStateCache matchStateCache, ScoreWriteBehindBuffer writeBehindBuffer,
+                              ScoreVersionCache scoreVersionCache) {
+        this.matchStateCache = matchStateCache;
+        this.writeBehindBuffer = writeBehindBuffer;
+        this.scoreVersionCache = scoreVersionCache;
     }
 
     /**
@@ -28,12 +47,24 @@ public class MatchScoreConsumer implements RocketMQListener<MatchScoreMessage> {
      */
     @Override
     public void onMessage(MatchScoreMessage message) {
+        MatchScoreEntity score = message.toEntity();
+        if (!scoreVersionCache.shouldWrite(score)) {
+            log.debug("[RocketMQ] 跳过过期或重复的比分消息: {} (version={})", score.getMatchId(), score.getVersion());
+            return;
+        }
         try {
-            // 示例：保存比分信息到数据库
-            matchScoreRepository.save(message.toEntity());
-            log.info("[RocketMQ] 比分消息已处理: {}", message);
+            matchStateCache.updateScore(score);
+            writeBehindBuffer.submit(score);
+            log.debug("[RocketMQ] 比分消息已处理: {}", message);
         } catch (Exception e) {
-            log.error("[RocketMQ] 比分消息处理失败:", e);
+            log.error("[RocketMQ] 比分消息处理失败: {}", message.getMatchId(), e);
+            throw e;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        consumer.setConsumeThreadMin(consumeThreads);
+        consumer.setConsumeThreadMax(consumeThreads);
+    }
+}
@@ -1,25 +1,61 @@
 package com.example.sportsystem.storageservice.listener;
 
+import com.example.sportsystem.common.entity.MatchOddsEntity;
 import com.example.sportsystem.common.model.OddsUpdateMessage;
-import com.example.sportsystem.storageservice.repository.MatchOddsRepository;
+import com.example.sportsystem.storageservice.batch.MicroBatchWriter;
+import com.example.sportsystem.storageservice.cache.MatchStateCache;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.spring.annotation.ConsumeMode;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
+import org.apache.rocketmq.spring.core.RocketMQPushConsumerLifecycleListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * 盘口数据消息消费者
- * 监听来自 RocketMQ 的盘口更新事件并持久化到数据库
+ * 监听来自 RocketMQ 的盘口更新事件，先更新 Redis 当前状态缓存，再经微批写入器批量追加盘口历史；
+ * 消费线程阻塞到所在批次提交后才返回，写入失败时挂起当前队列稍后重新消费。
+ * 按队列顺序消费：生产端按赛事ID选择队列，同一赛事的盘口按发送顺序处理，不同队列的赛事并行
  */
 @Component
-@RocketMQMessageListener(topic = "ODDS_UPDATE_TOPIC", consumerGroup = "odds-update-consumer-group")
+@RocketMQMessageListener(topic = "ODDS_UPDATE_TOPIC", consumerGroup = "odds-update-consumer-group",
+        consumeMode = ConsumeMode.ORDERLY)
 @Slf4j
-public class OddsUpdateConsumer implements RocketMQListener<OddsUpdateMessage> {
+public class OddsUpdateConsumer implements RocketMQListener<OddsUpdateMessage>, RocketMQPushConsumerLifecycleListener {
+
+    private final MicroBatchWriter<MatchOddsEntity> oddsBatchWriter;
+    private final MatchStateCache matchStateCache;
+    // 替换后的监听器自行反序列化：与默认转换器一致忽略未知字段，生产端新增字段不会导致消息被跳过
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final LongAdder skippedMessages = new LongAdder(); // 无法解析而跳过的消息数
 
-    private final MatchOddsRepository matchOddsRepository;
+    // 消费线程数（顺序消费时同一队列同一时刻只有一个线程处理，超过队列数的线程不会被用到）
+    @Value("${storage.consumer.odds-threads:64}")
+    private int consumeThreads;
 
-    public OddsUpdateConsumer(MatchOddsRepository matchOddsRepository) {
-        this.matchOddsRepository = matchOddsRepository;
+    // 单次从一个队列取出并整体提交的消息数（顺序消费时决定单批能凑到的记录数）
+    @Value("${storage.consumer.odds-batch-max-size:32}")
+    private int consumeBatchMaxSize;
+
+    public OddsUpdateConsumer(MicroBatchWriter<MatchOddsEntity> oddsBatchWriter, MatchStateCache matchStateCache) {
+        this.oddsBatchWriter = oddsBatchWriter;
+        this.matchStateCache = matchStateCache;
     }
 
     /**
@@ -28,12 +64,64 @@ public class OddsUpdateConsumer implements RocketMQListener<OddsUpdateMessage> {
      */
     @Override
     public void onMessage(OddsUpdateMessage message) {
-        try {
-            // 示例：保存盘口信息到数据库
-            matchOddsRepository.save(message.toEntity());
-            log.info("[RocketMQ] 盘口消息已处理: {}", message);
-        } catch (Exception e) {
-            log.error("[RocketMQ] 盘口消息处理失败:", e);
+        handle(List.of(message));
+    }
+
+    /**
+     * 按顺序更新缓存后整体写入盘口历史，阻塞到全部记录提交
+     * @param messages 同一队列中连续的盘口消息
+     */
+    private void handle(List<OddsUpdateMessage> messages) {
+        List<MatchOddsEntity> batch = new ArrayList<>(messages.size());
+        for (OddsUpdateMessage message : messages) {
+            MatchOddsEntity odds = message.toEntity();
+            matchStateCache.updateOdds(odds);
+            batch.add(odds);
         }
+        oddsBatchWriter.writeAll(batch);
+        log.debug("[RocketMQ] 盘口消息已处理: {} 条", batch.size());
+    }
+
+    /**
+     * 顺序消费时每个队列同一时刻只有一条消息在等待提交，逐条阻塞写入会使单批记录数受限于队列数；
+     * 这里替换默认监听器，一次取出同一队列的多条消息整体提交
+     */
+    @Override
+    public void prepareStart(DefaultMQPushConsumer consumer) {
+        consumer.setConsumeThreadMin(consumeThreads);
+        consumer.setConsumeThreadMax(consumeThreads);
+        consumer.setConsumeMessageBatchMaxSize(consumeBatchMaxSize);
+        consumer.setMessageListener((MessageListenerOrderly) (msgs, context) -> {
+            List<OddsUpdateMessage> messages = new ArrayList<>(msgs.size());
+            for (MessageExt msg : msgs) {
+                try {
+                    messages.add(objectMapper.readValue(msg.getBody(), OddsUpdateMessage.class));
+                } catch (IOException e) {
+                    // 无法解析的消息重试也不会成功，跳过以免阻塞整个队列
+                    skippedMessages.increment();
+                    log.error("[RocketMQ] 无法解析的盘口消息已跳过: {}", msg.getMsgId(), e);
+                }
+            }
+            if (messages.isEmpty()) {
+                return ConsumeOrderlyStatus.SUCCESS;
+            }
+            try {
+                handle(messages);
+                return ConsumeOrderlyStatus.SUCCESS;
+            } catch (Exception e) {
+                log.error("[RocketMQ] 盘口消息处理失败，挂起队列后重试: {} 条", messages.size(), e);
+                return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+            }
+        });
+    }
+
+    /**
+     * 导出统计数据
+     * @return 统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("skipped_messages", skippedMessages.sum());
+        return stats;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package com.example.sportsystem.storageservice.repository;
+
+import com.example.sportsystem.common.entity.MatchScoreEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 比分的 JDBC 批量写入与读取（盘口见 OddsHistoryRepository）
+ * 配合连接参数 rewriteBatchedStatements=true，驱动将一批 INSERT 改写为多值语句一次发送
+ */
+@Repository
+public class MatchBatchRepository {
+
+    // 版本条件更新：只有版本高于已存版本时才覆盖，重投的旧消息与同版本的重复投递均不生效（version 必须最后赋值）
+    private static final String UPSERT_SCORE_SQL =
+            "INSERT INTO match_score_entity (match_id, home_score, away_score, minute, period, status, version, update_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "home_score = IF(VALUES(version) > version, VALUES(home_score), home_score), " +
+            "away_score = IF(VALUES(version) > version, VALUES(away_score), away_score), " +
+            "minute = IF(VALUES(version) > version, VALUES(minute), minute), " +
+            "period = IF(VALUES(version) > version, VALUES(period), period), " +
+            "status = IF(VALUES(version) > version, VALUES(status), status), " +
+            "update_time = IF(VALUES(version) > version, VALUES(update_time), update_time), " +
+            "version = GREATEST(version, VALUES(version))";
+
+    private static final String SELECT_SCORE_SQL =
+            "SELECT match_id, home_score, away_score, minute, period, status, version, update_time " +
+            "FROM match_score_entity WHERE match_id = ?";
+
+    private static final RowMapper<MatchScoreEntity> ROW_MAPPER = (rs, rowNum) -> {
+        Timestamp updateTime = rs.getTimestamp("update_time");
+        return new MatchScoreEntity(
+                rs.getString("match_id"),
+                rs.getInt("home_score"),
+                rs.getInt("away_score"),
+                rs.getInt("minute"),
+                rs.getString("period"),
+                rs.getString("status"),
+                rs.getLong("version"),
+                updateTime != null ? updateTime.toLocalDateTime() : null);
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MatchBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 批量写入比分（按赛事ID覆盖，版本不高于已存版本的比分不生效）
+     * @param scores 比分列表
+     */
+    public void batchUpsertScores(List<MatchScoreEntity> scores) {
+        jdbcTemplate.batchUpdate(UPSERT_SCORE_SQL, scores, scores.size(), (ps, score) -> {
+            ps.setString(1, score.getMatchId());
+            ps.setInt(2, score.getHomeScore());
+            ps.setInt(3, score.getAwayScore());
+            ps.setInt(4, score.getMinute());
+            ps.setString(5, score.getPeriod());
+            ps.setString(6, score.getStatus());
+            ps.setLong(7, score.getVersion());
+            ps.setTimestamp(8, score.getUpdateTime() != null ? Timestamp.valueOf(score.getUpdateTime()) : null);
+        });
+    }
+
+    /**
+     * 查询赛事比分
+     * @param matchId 赛事ID
+     * @return 比分（不存在时返回 null）
+     */
+    public MatchScoreEntity findScore(String matchId) {
+        List<MatchScoreEntity> scores = jdbcTemplate.query(SELECT_SCORE_SQL, ROW_MAPPER, matchId);
+        return scores.isEmpty() ? null : scores.get(0);
+    }
+
+    /**
+     * 批量查询赛事的比分版本
+     * @param matchIds 赛事ID
+     * @return 赛事ID -> 版本（不存在的赛事不在结果中）
+     */
+    public Map<String, Long> findVersions(Collection<String> matchIds) {
+        Map<String, Long> versions = new HashMap<>();
+        if (matchIds.isEmpty()) {
+            return versions;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(matchIds.size(), "?"));
+        jdbcTemplate.query("SELECT match_id, version FROM match_score_entity WHERE match_id IN (" + placeholders + ")",
+                rs -> {
+                    versions.put(rs.getString("match_id"), rs.getLong("version"));
+                }, matchIds.toArray());
+        return versions;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.sportsystem.storageservice.repository;
+
+import com.example.sportsystem.common.entity.MatchOddsEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 盘口历史与当前盘口的 JDBC 访问
+ * 历史表只追加（按天分区），当前盘口表每个赛事/公司/玩法只保留一行，建表语句见 db/odds_history.sql
+ */
+@Repository
+public class OddsHistoryRepository {
+
+    // 只把主键冲突（重复投递）视为无操作；不用 INSERT IGNORE，避免截断、非法值等错误被降级为警告后静默丢数据
+    private static final String APPEND_HISTORY_SQL =
+            "INSERT INTO match_odds_history (match_id, bookmaker, odds_type, ts, handicap, home_odds, away_odds) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE match_id = match_id";
+
+    // 只有时间戳不早于当前值时才覆盖，乱序到达的旧盘口不会覆盖最新价格（ts 必须最后赋值）
+    private static final String UPSERT_CURRENT_SQL =
+            "INSERT INTO match_odds_current (match_id, bookmaker, odds_type, ts, handicap, home_odds, away_odds) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "handicap = IF(VALUES(ts) >= ts, VALUES(handicap), handicap), " +
+            "home_odds = IF(VALUES(ts) >= ts, VALUES(home_odds), home_odds), " +
+            "away_odds = IF(VALUES(ts) >= ts, VALUES(away_odds), away_odds), " +
+            "ts = GREATEST(ts, VALUES(ts))";
+
+    private static final String SELECT_MOVEMENT_SQL =
+            "SELECT match_id, bookmaker, odds_type, handicap, home_odds, away_odds, ts FROM match_odds_history " +
+            "WHERE match_id = ? AND ts >= ? AND ts < ? ORDER BY ts";
+
+    private static final String SELECT_CURRENT_SQL =
+            "SELECT match_id, bookmaker, odds_type, handicap, home_odds, away_odds, ts FROM match_odds_current " +
+            "WHERE match_id = ?";
+
+    private static final RowMapper<MatchOddsEntity> ROW_MAPPER = (rs, rowNum) -> new MatchOddsEntity(
+            rs.getString("match_id"),
+            rs.getString("bookmaker"),
+            rs.getString("odds_type"),
+            rs.getString("handicap"),
+            rs.getDouble("home_odds"),
+            rs.getDouble("away_odds"),
+            rs.getTimestamp("ts").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OddsHistoryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * 批量追加盘口历史并更新当前盘口（调用方负责事务）
+     * 同一盘口同一时刻的重复投递在历史表中被忽略
+     * @param odds 盘口列表
+     */
+    public void batchAppend(List<MatchOddsEntity> odds) {
+        jdbcTemplate.batchUpdate(APPEND_HISTORY_SQL, odds, odds.size(), OddsHistoryRepository::bind);
+        jdbcTemplate.batchUpdate(UPSERT_CURRENT_SQL, odds, odds.size(), OddsHistoryRepository::bind);
+    }
+
+    /**
+     * 查询赛事在时间区间内的价格走势（按时间升序）
+     * @param matchId 赛事ID
+     * @param from 起始时间（包含）
+     * @param to 结束时间（不包含）
+     * @return 盘口历史
+     */
+    public List<MatchOddsEntity> findMovement(String matchId, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(SELECT_MOVEMENT_SQL, ROW_MAPPER, matchId, Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * 查询赛事各公司/玩法的当前盘口
+     * @param matchId 赛事ID
+     * @return 当前盘口
+     */
+    public List<MatchOddsEntity> findCurrent(String matchId) {
+        return jdbcTemplate.query(SELECT_CURRENT_SQL, ROW_MAPPER, matchId);
+    }
+
+    private static void bind(PreparedStatement ps, MatchOddsEntity odds) throws SQLException {
+        // 主键列不允许为空，缺失的公司/玩法按空字符串存储
+        ps.setString(1, odds.getMatchId());
+        ps.setString(2, odds.getBookmaker() != null ? odds.getBookmaker() : "");
+        ps.setString(3, odds.getOddsType() != null ? odds.getOddsType() : "");
+        ps.setTimestamp(4, Timestamp.valueOf(odds.getTimestamp()));
+        ps.setString(5, odds.getHandicap());
+        ps.setDouble(6, odds.getHomeOdds());
+        ps.setDouble(7, odds.getAwayOdds());
+    }
+}
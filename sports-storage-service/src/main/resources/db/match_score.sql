@@ -0,0 +1,19 @@
+-- 比分当前状态表（每场赛事一行）
+-- MatchBatchRepository 的批量 INSERT ... ON DUPLICATE KEY UPDATE 依赖主键 match_id 判定冲突，
+-- 缺少该主键时每条消息都会插入新行
+-- version 为数据源版本号（未提供时按比赛阶段、比赛分钟与总进球数推导），写入时只接受高于已存版本的比分
+CREATE TABLE IF NOT EXISTS match_score_entity (
+    match_id    VARCHAR(64)  NOT NULL,
+    home_score  INT          NOT NULL,
+    away_score  INT          NOT NULL,
+    minute      INT          NOT NULL,
+    period      VARCHAR(32)  NULL,
+    status      VARCHAR(32)  NULL,
+    version     BIGINT       NOT NULL DEFAULT 0,
+    update_time DATETIME(3)  NULL,
+    PRIMARY KEY (match_id)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
+
+-- 已有表升级
+-- ALTER TABLE match_score_entity ADD COLUMN version BIGINT NOT NULL DEFAULT 0 AFTER status;
@@ -0,0 +1,35 @@
+-- 盘口历史表（只追加）
+-- 主键 (match_id, bookmaker, odds_type, ts)：同一盘口同一时刻的重复投递被忽略；
+-- 按 ts 每天一个 RANGE 分区，查询“某赛事最近一小时的价格走势”只扫描 1~2 个分区，
+-- 耗时与表的总行数无关。建表时只有 pmax，日分区由 OddsHistoryPartitionJob 启动时从 pmax 拆分并提前创建，
+-- 过期分区整块删除
+CREATE TABLE IF NOT EXISTS match_odds_history (
+    match_id   VARCHAR(64)   NOT NULL,
+    bookmaker  VARCHAR(64)   NOT NULL,
+    odds_type  VARCHAR(32)   NOT NULL,
+    ts         DATETIME(3)   NOT NULL,
+    handicap   VARCHAR(32)   NULL,
+    home_odds  DECIMAL(10,4) NOT NULL,
+    away_odds  DECIMAL(10,4) NOT NULL,
+    PRIMARY KEY (match_id, bookmaker, odds_type, ts),
+    -- 按赛事查询全部公司/玩法的时间区间走势
+    KEY idx_match_ts (match_id, ts)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4
+PARTITION BY RANGE COLUMNS (ts) (
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- 当前盘口表（每个赛事/公司/玩法一行，只保存最新价格）
+CREATE TABLE IF NOT EXISTS match_odds_current (
+    match_id   VARCHAR(64)   NOT NULL,
+    bookmaker  VARCHAR(64)   NOT NULL,
+    odds_type  VARCHAR(32)   NOT NULL,
+    ts         DATETIME(3)   NOT NULL,
+    handicap   VARCHAR(32)   NULL,
+    home_odds  DECIMAL(10,4) NOT NULL,
+    away_odds  DECIMAL(10,4) NOT NULL,
+    updated_at TIMESTAMP(3)  NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+    PRIMARY KEY (match_id, bookmaker, odds_type)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;